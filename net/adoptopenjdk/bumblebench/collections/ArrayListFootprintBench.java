@@ -0,0 +1,29 @@
+/*******************************************************************************
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*******************************************************************************/
+
+package net.adoptopenjdk.bumblebench.collections;
+
+import net.adoptopenjdk.bumblebench.core.FootprintBench;
+
+public final class ArrayListFootprintBench extends FootprintBench {
+	private final int ARRAY_SIZE = option("arraySize", 100);
+
+	protected Object build() {
+		return CollectionsBench.newArrayList(ARRAY_SIZE);
+	}
+
+	protected int elementsPerInstance() {
+		return ARRAY_SIZE;
+	}
+}
@@ -24,16 +24,24 @@ abstract class CollectionsBench extends MicroBench {
 	protected final int HASH_MAP_SIZE = option("hashMapSize", 100);
 
 	protected ArrayList<Integer> newArrayList() {
-		ArrayList<Integer> result = new ArrayList<Integer>(ARRAY_SIZE);
-		for(int i = 0; i < ARRAY_SIZE; i++){
+		return newArrayList(ARRAY_SIZE);
+	}
+
+	protected HashMap<Integer, Integer> newHashMap() {
+		return newHashMap(HASH_MAP_SIZE);
+	}
+
+	static ArrayList<Integer> newArrayList(int size) {
+		ArrayList<Integer> result = new ArrayList<Integer>(size);
+		for(int i = 0; i < size; i++){
 			result.add(new Integer(i));
 		}
 		return result;
 	}
 
-	protected HashMap<Integer, Integer> newHashMap() {
-		HashMap<Integer, Integer> result = new HashMap<Integer, Integer>(HASH_MAP_SIZE);
-		for(int i = 0; i < HASH_MAP_SIZE; i++){
+	static HashMap<Integer, Integer> newHashMap(int size) {
+		HashMap<Integer, Integer> result = new HashMap<Integer, Integer>(size);
+		for(int i = 0; i < size; i++){
 			result.put(new Integer(i), new Integer(i));
 		}
 		return result;
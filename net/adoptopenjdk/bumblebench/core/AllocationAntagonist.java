@@ -0,0 +1,296 @@
+/*******************************************************************************
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*******************************************************************************/
+
+package net.adoptopenjdk.bumblebench.core;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Allocates in a background thread while the benchmark runs, so that it is
+ * measured in a heap that is busy, as production heaps are, rather than one
+ * that has just been emptied by <tt>System.gc()</tt>.
+ * <p>
+ * Set option <tt>antagonistRate</tt> to the number of megabytes per second
+ * to allocate.  Object sizes are drawn from <tt>antagonistSizes</tt>, a list
+ * of <tt>bytes:weight</tt> pairs.  A fraction <tt>antagonistSurvival</tt> of
+ * the objects survive: each one replaces a random object in a pool of about
+ * <tt>antagonistRetainedMB</tt>, so survivors are promoted and later die,
+ * and the old generation keeps needing collection too.  While the
+ * antagonist runs, MiniBench's <tt>callSystemGC</tt> defaults to false, since
+ * a full GC before each batch would hide its effect.
+ * <p>
+ * The GC pauses of the whole JVM are collected from GC notifications (which
+ * need <tt>com.sun.management</tt>) and reported by phase after the score.
+ * Explicit <tt>System.gc()</tt> calls and the concurrent cycles of collectors
+ * like ZGC and Shenandoah, which the JVM reports as separate collectors, are
+ * left out.
+ */
+final class AllocationAntagonist extends Util implements Runnable {
+
+	static final float  ANTAGONIST_RATE         = option("antagonistRate", 0F);
+	static final String ANTAGONIST_SIZES        = option("antagonistSizes", "32:60,128:30,1024:9,65536:1");
+	static final float  ANTAGONIST_SURVIVAL     = option("antagonistSurvival", 0.01F);
+	static final int    ANTAGONIST_RETAINED_MB  = option("antagonistRetainedMB", 64);
+
+	static final boolean ENABLED = ANTAGONIST_RATE > 0;
+
+	static final double BYTES_PER_MEGABYTE = 1024.0 * 1024.0;
+
+	// When the antagonist falls behind, it catches up by at most this much time's worth of allocation
+	static final long MAX_CATCH_UP_NANOS = 100000000L;
+
+	static final int ARRAY_HEADER_BYTES = 16; // Roughly
+
+	static final int RECENT_OBJECTS = 256; // Kept briefly reachable so allocations can't be optimized away
+
+	/** Returns a new antagonist, or null if none is requested. */
+	static AllocationAntagonist create() {
+		return ENABLED? new AllocationAntagonist() : null;
+	}
+
+	final int[]    _sizes;
+	final double[] _cumulativeWeights;
+	final Object[] _survivors;
+	final Object[] _recent = new Object[RECENT_OBJECTS];
+
+	private Thread _thread;
+	private volatile boolean _stopping;
+	private long _startNanos, _stopNanos;
+	private long _allocatedBytes, _survivingObjects; // Written only by the antagonist thread
+
+	AllocationAntagonist() {
+		String[] entries = ANTAGONIST_SIZES.split(",");
+		_sizes = new int[entries.length];
+		_cumulativeWeights = new double[entries.length];
+		double totalWeight = 0, meanSize = 0;
+		for (int i = 0; i < entries.length; i++) {
+			String[] fields = entries[i].trim().split(":");
+			try {
+				_sizes[i] = Integer.parseInt(fields[0].trim());
+				totalWeight += (fields.length >= 2)? Double.parseDouble(fields[1].trim()) : 1.0;
+			} catch (NumberFormatException e) {
+				throw new Error("Unrecognized antagonistSizes entry: \"" + entries[i] + "\"");
+			}
+			if (fields.length > 2 || _sizes[i] < 0 || !(totalWeight > 0))
+				throw new Error("Unrecognized antagonistSizes entry: \"" + entries[i] + "\"");
+			_cumulativeWeights[i] = totalWeight;
+			meanSize += _sizes[i] * (_cumulativeWeights[i] - ((i > 0)? _cumulativeWeights[i-1] : 0));
+		}
+		for (int i = 0; i < entries.length; i++)
+			_cumulativeWeights[i] /= totalWeight;
+		meanSize /= totalWeight;
+		int poolSize = (int)Math.min(ANTAGONIST_RETAINED_MB * BYTES_PER_MEGABYTE / Math.max(meanSize, 1.0), Integer.MAX_VALUE - 8);
+		_survivors = new Object[Math.max(poolSize, 1)];
+	}
+
+	final void start(String phase) {
+		_phase = phase;
+		_pauseListener = GCPauseListener.create(this);
+		_startNanos = System.nanoTime();
+		_thread = new Thread(this, "BumbleBench allocation antagonist");
+		_thread.setDaemon(true);
+		_thread.start();
+	}
+
+	final void startPhase(String phase) {
+		_phase = phase;
+	}
+
+	final void stop() {
+		_stopping = true;
+		try {
+			_thread.join();
+		} catch (InterruptedException e) {
+			// Leave it to finish on its own; it's a daemon
+		}
+		_stopNanos = System.nanoTime();
+		if (_pauseListener != null)
+			_pauseListener.remove();
+	}
+
+	private long _seed = System.nanoTime() | 1;
+
+	/** Xorshift, so the antagonist's random choices don't contend with anything else. */
+	private double nextDouble() {
+		_seed ^= _seed << 13;
+		_seed ^= _seed >>> 7;
+		_seed ^= _seed << 17;
+		return (_seed >>> 11) * 0x1.0p-53;
+	}
+
+	public void run() {
+		double bytesPerNano = ANTAGONIST_RATE * BYTES_PER_MEGABYTE / 1.0e+9;
+		long owedFrom = _startNanos; // Allocation is owed for the time since this
+		double owedBytes = 0;
+		int r = 0;
+		while (!_stopping) {
+			long now = System.nanoTime();
+			owedBytes += bytesPerNano * Math.min(now - owedFrom, MAX_CATCH_UP_NANOS);
+			owedFrom = now;
+			if (owedBytes <= 0) {
+				LockSupport.parkNanos(1000000L);
+				continue;
+			}
+			for (int n = 0; n < 256 && owedBytes > 0; n++) {
+				double u = nextDouble();
+				int s = 0;
+				while (s + 1 < _sizes.length && u >= _cumulativeWeights[s])
+					s++;
+				byte[] object = new byte[_sizes[s]];
+				_recent[r++ & (RECENT_OBJECTS - 1)] = object;
+				owedBytes       -= _sizes[s] + ARRAY_HEADER_BYTES;
+				_allocatedBytes += _sizes[s] + ARRAY_HEADER_BYTES;
+				if (nextDouble() < ANTAGONIST_SURVIVAL) {
+					_survivors[(int)(nextDouble() * _survivors.length)] = object;
+					_survivingObjects++;
+				}
+			}
+		}
+	}
+
+	/*
+	 * GC pauses
+	 */
+
+	private volatile String _phase;
+	private GCPauseListener _pauseListener;
+
+	// Pause milliseconds by phase; written by the notification thread
+	private final Map<String, List<Long>> _pauses = new LinkedHashMap<String, List<Long>>();
+	private long _explicitGCs;
+
+	final synchronized void pause(long millis, boolean explicit) {
+		if (explicit) {
+			_explicitGCs++;
+			return;
+		}
+		List<Long> pauses = _pauses.get(_phase);
+		if (pauses == null)
+			_pauses.put(_phase, pauses = new ArrayList<Long>());
+		pauses.add(millis);
+	}
+
+	/** Passes the pauses from the JVM's GC notifications to the antagonist. */
+	static final class GCPauseListener implements NotificationListener {
+		final AllocationAntagonist _antagonist;
+		final List<NotificationEmitter> _emitters = new ArrayList<NotificationEmitter>();
+
+		GCPauseListener(AllocationAntagonist antagonist) {
+			_antagonist = antagonist;
+		}
+
+		static GCPauseListener create(AllocationAntagonist antagonist) {
+			try {
+				com.sun.management.GarbageCollectionNotificationInfo.class.getName(); // Fail here rather than on the notification thread
+				GCPauseListener listener = new GCPauseListener(antagonist);
+				for (GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans()) {
+					if (gc instanceof NotificationEmitter && !isConcurrent(gc.getName())) {
+						((NotificationEmitter)gc).addNotificationListener(listener, null, null);
+						listener._emitters.add((NotificationEmitter)gc);
+					}
+				}
+				return listener;
+			} catch (LinkageError e) {
+				out().println("NOTE: This JVM has no GC notifications; GC pauses won't be reported");
+				return null;
+			}
+		}
+
+		// Collectors that report concurrent cycles alongside their pauses, like "ZGC Cycles" and "G1 Concurrent GC"
+		static boolean isConcurrent(String collectorName) {
+			return collectorName.endsWith(" Cycles") || collectorName.contains("Concurrent");
+		}
+
+		public void handleNotification(Notification notification, Object handback) {
+			if (!notification.getType().equals(com.sun.management.GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION))
+				return;
+			com.sun.management.GarbageCollectionNotificationInfo info =
+				com.sun.management.GarbageCollectionNotificationInfo.from((CompositeData)notification.getUserData());
+			_antagonist.pause(info.getGcInfo().getDuration(), info.getGcCause().equals("System.gc()"));
+		}
+
+		void remove() {
+			for (NotificationEmitter emitter: _emitters) {
+				try {
+					emitter.removeNotificationListener(this);
+				} catch (Exception e) {
+					// Already gone
+				}
+			}
+		}
+	}
+
+	/*
+	 * Output
+	 */
+
+	void report(ResultsSink results, String benchmarkName) {
+		double seconds = (_stopNanos - _startNanos) / 1.0e+9;
+		double achievedRate = _allocatedBytes / BYTES_PER_MEGABYTE / Math.max(seconds, 1.0e-9);
+		out().println("\n  allocation antagonist: " + BumbleBench.pretty(ANTAGONIST_RATE) + " MB/s requested, "
+			+ BumbleBench.pretty(achievedRate) + " MB/s achieved, "
+			+ BumbleBench.percentage(ANTAGONIST_SURVIVAL).trim() + "% surviving into a pool of " + ANTAGONIST_RETAINED_MB + " MB");
+		if (achievedRate < ANTAGONIST_RATE * 0.9)
+			out().println("  NOTE: the antagonist fell behind its allocation rate; the machine may have too few CPUs for it");
+		if (results != null)
+			results.write(new ResultsSink.Record("allocationAntagonist")
+				.put("benchmark",        benchmarkName)
+				.put("requestedMBPerSecond", ANTAGONIST_RATE)
+				.put("achievedMBPerSecond",  achievedRate)
+				.put("sizes",            ANTAGONIST_SIZES)
+				.put("survival",         ANTAGONIST_SURVIVAL)
+				.put("retainedMB",       (long)ANTAGONIST_RETAINED_MB)
+				.put("survivingObjects", _survivingObjects)
+				.put("seconds",          seconds));
+		if (_pauseListener == null)
+			return;
+
+		synchronized (this) {
+			out().println("  GC pauses by phase:\tcount\ttotal\tp50\tp99\tmax" + ((_explicitGCs > 0)? "\t(not counting " + _explicitGCs + " System.gc() calls)" : ""));
+			for (Map.Entry<String, List<Long>> entry: _pauses.entrySet()) {
+				List<Long> pauses = entry.getValue();
+				Collections.sort(pauses);
+				long total = 0;
+				for (long p: pauses)
+					total += p;
+				long p50 = pauses.get((int)Math.min(pauses.size() * 0.50, pauses.size() - 1));
+				long p99 = pauses.get((int)Math.min(pauses.size() * 0.99, pauses.size() - 1));
+				long max = pauses.get(pauses.size() - 1);
+				out().println("    " + entry.getKey() + "\t\t" + pauses.size() + "\t" + total + "ms\t" + p50 + "ms\t" + p99 + "ms\t" + max + "ms");
+				if (results != null)
+					results.write(new ResultsSink.Record("gcPauses")
+						.put("benchmark",   benchmarkName)
+						.put("phase",       entry.getKey())
+						.put("count",       (long)pauses.size())
+						.put("totalMillis", total)
+						.put("p50Millis",   p50)
+						.put("p99Millis",   p99)
+						.put("maxMillis",   max));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,195 @@
+/*******************************************************************************
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*******************************************************************************/
+
+package net.adoptopenjdk.bumblebench.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * A store of reference scores, and a regression gate that checks new scores against them.
+ * <p>
+ * Baselines are kept in plain properties files in the directory named by
+ * option <tt>baselineDir</tt>, one file per <em>fingerprint</em>.  The
+ * default fingerprint identifies the machine (host name, OS, architecture and
+ * processor count) and the JDK (VM vendor, VM name and Java specification
+ * version), so that successive builds of the same JDK release on the same
+ * machine share a baseline.  Option <tt>baselineFingerprint</tt> overrides it,
+ * for example to compare against a baseline recorded under another name.
+ * <p>
+ * Option <tt>baseline</tt> selects what to do with each benchmark's final score:
+ * <ul>
+ * <li><tt>record</tt>: store it (and its uncertainty) as the new baseline.
+ * <li><tt>compare</tt>: compare it with the stored baseline.  The run exits
+ *     with status 2 if any benchmark dropped by more than
+ *     <tt>regressionSigmas</tt> times the combined uncertainty of the two
+ *     scores, and by more than <tt>minRegression</tt>.
+ * </ul>
+ */
+final class Baseline extends Util {
+
+	static final String BASELINE_MODE        = option("baseline", "");
+	static final String BASELINE_DIR         = option("baselineDir", "bumblebench-baselines");
+	static final String BASELINE_FINGERPRINT = option("baselineFingerprint", "");
+	static final float  REGRESSION_SIGMAS    = option("regressionSigmas", 1.0F);
+	static final float  MIN_REGRESSION       = option("minRegression", 0.01F);
+
+	static final int REGRESSION_EXIT_STATUS = 2;
+
+	final String     _fingerprint;
+	final File       _file;
+	final Properties _scores = new Properties();
+
+	Baseline(String fingerprint) throws IOException {
+		_fingerprint = fingerprint;
+		_file = new File(BASELINE_DIR, fingerprint + ".properties");
+		if (_file.exists()) {
+			InputStream stream = new FileInputStream(_file);
+			try {
+				_scores.load(stream);
+			} finally {
+				stream.close();
+			}
+		}
+	}
+
+	/** Records or compares the given results, as selected by option <tt>baseline</tt>.
+	 *
+	 * @return false if a significant regression was found
+	 */
+	static boolean process(List<BenchmarkResult> results) throws IOException {
+		if (BASELINE_MODE.equals("") || Fork.IS_CHILD)
+			return true;
+		Baseline baseline = new Baseline(BASELINE_FINGERPRINT.equals("")? defaultFingerprint() : BASELINE_FINGERPRINT);
+		if (BASELINE_MODE.equals("record")) {
+			baseline.record(results);
+			return true;
+		} else if (BASELINE_MODE.equals("compare")) {
+			return baseline.compare(results);
+		} else {
+			throw new Error("Unrecognized baseline mode: \"" + BASELINE_MODE + "\"");
+		}
+	}
+
+	static String defaultFingerprint() {
+		String host;
+		try {
+			host = InetAddress.getLocalHost().getHostName();
+		} catch (IOException e) {
+			host = "unknown-host";
+		}
+		String fingerprint = host
+			+ "-" + System.getProperty("os.name")
+			+ "-" + System.getProperty("os.arch")
+			+ "-" + Runtime.getRuntime().availableProcessors() + "cpu"
+			+ "-" + System.getProperty("java.vm.vendor")
+			+ "-" + System.getProperty("java.vm.name")
+			+ "-" + System.getProperty("java.specification.version");
+		return fingerprint.replaceAll("[^A-Za-z0-9._-]+", "_");
+	}
+
+	void record(List<BenchmarkResult> results) throws IOException {
+		int recorded = 0;
+		for (BenchmarkResult r: results) {
+			if (!r.succeeded()) {
+				out().println("Not recording baseline for " + r._name + ": " + r.status());
+				continue;
+			}
+			_scores.setProperty(r._name + ".score",       Float.toString(r._score));
+			_scores.setProperty(r._name + ".uncertainty", Float.toString(r._uncertainty));
+			_scores.setProperty(r._name + ".javaVersion", System.getProperty("java.runtime.version", System.getProperty("java.version")));
+			recorded++;
+		}
+		File dir = _file.getParentFile();
+		if (dir != null && !dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Unable to create baseline directory " + dir);
+		OutputStream stream = new FileOutputStream(_file);
+		try {
+			_scores.store(stream, "BumbleBench baseline for " + _fingerprint);
+		} finally {
+			stream.close();
+		}
+		out().println("\nRecorded " + recorded + " baseline score" + (recorded == 1? "" : "s") + " in " + _file);
+	}
+
+	boolean compare(List<BenchmarkResult> results) {
+		int nameWidth = "Benchmark".length();
+		for (BenchmarkResult r: results)
+			nameWidth = Math.max(nameWidth, r._name.length());
+		String format = "  %-" + nameWidth + "s  %10s  %10s  %7s  %9s  %s";
+
+		out().println("\n-= BumbleBench baseline comparison: " + _file + " =-\n");
+		out().println(String.format(format, "Benchmark", "Baseline", "Current", "Change%", "Allowed%", "Verdict"));
+		boolean passed = true;
+		for (BenchmarkResult r: results) {
+			String baseScore = _scores.getProperty(r._name + ".score");
+			if (baseScore == null) {
+				out().println(String.format(format, r._name, "--", score(r), "--", "--", "no baseline"));
+				continue;
+			}
+			float base = Float.parseFloat(baseScore);
+			float baseUncertainty = Float.parseFloat(_scores.getProperty(r._name + ".uncertainty", "0"));
+			if (!r.succeeded()) {
+				out().println(String.format(format, r._name, BumbleBench.score(base), score(r), "--", "--", "FAILED: " + r.status()));
+				passed = false;
+				continue;
+			}
+
+			// Scores are compared relative to the baseline, with the two
+			// uncertainties combined as though they were independent errors.
+			double change  = (r._score - base) / base;
+			double allowed = Math.max(REGRESSION_SIGMAS * Math.sqrt(baseUncertainty*baseUncertainty + r._uncertainty*r._uncertainty), MIN_REGRESSION);
+			String verdict;
+			if (-change > allowed) {
+				verdict = "REGRESSION";
+				passed = false;
+			} else if (change > allowed) {
+				verdict = "improved";
+			} else {
+				verdict = "ok";
+			}
+			out().println(String.format(format, r._name, BumbleBench.score(base), score(r),
+				BumbleBench.percentage(change), BumbleBench.percentage(allowed), verdict));
+
+			ResultsSink sink = ResultsSink.instance();
+			if (sink != null) {
+				sink.write(new ResultsSink.Record("baseline")
+					.put("benchmark",           r._name)
+					.put("fingerprint",         _fingerprint)
+					.put("baseline",            base)
+					.put("baselineUncertainty", baseUncertainty)
+					.put("score",               r._score)
+					.put("uncertainty",         r._uncertainty)
+					.put("change",              change)
+					.put("allowed",             allowed)
+					.put("verdict",             verdict));
+			}
+		}
+		if (!passed)
+			out().println("\n!!! Significant regression against baseline !!!");
+		return passed;
+	}
+
+	private static String score(BenchmarkResult r) {
+		return (r._error != null)? "--" : BumbleBench.score(r._score);
+	}
+
+}
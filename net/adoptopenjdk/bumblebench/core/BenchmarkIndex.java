@@ -0,0 +1,279 @@
+/*******************************************************************************
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*******************************************************************************/
+
+package net.adoptopenjdk.bumblebench.core;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The list of runnable benchmarks in the BumbleBench jar, so the
+ * {@link Launcher} can list and find them without loading every class.
+ * <p>
+ * The index is generated at build time by running this class's
+ * <tt>main</tt> on the compiled classes, and packed into the jar as
+ * {@link #RESOURCE}.  Each line holds a benchmark's canonical name (as
+ * listed), its class name (as loaded), its properties file resource, or
+ * <tt>-</tt> if it has none, and its class file major version.  Classes
+ * that the JDK running the build couldn't load are indexed too, with
+ * <tt>-</tt> for the canonical name, since it isn't known whether they are
+ * benchmarks.  When the index is missing, or option <tt>useIndex</tt> is
+ * false, the Launcher scans the class path instead, using {@link #scan}.
+ * <p>
+ * Either way, the entries are then checked against the running JVM: those
+ * with class files it can't load are left out and counted, so the Launcher
+ * can say there are more benchmarks than it lists, and those the build
+ * couldn't check are loaded and checked now if the running JVM can.
+ */
+final class BenchmarkIndex extends Util {
+
+	static final String  RESOURCE  = "/net/adoptopenjdk/bumblebench/core/BenchmarkIndex.txt";
+	static final boolean USE_INDEX = option("useIndex", true);
+
+	static final class Entry {
+		final String _canonicalName;  // For example net.adoptopenjdk.bumblebench.gpu.KmeansBench.CPU
+		final String _className;      // For example net.adoptopenjdk.bumblebench.gpu.KmeansBench$CPU
+		final String _properties;     // Resource name of the properties file, or null
+		final int    _majorVersion;   // Of the class file, or 0 if unknown
+
+		Entry(String canonicalName, String className, String properties, int majorVersion) {
+			_canonicalName = canonicalName;
+			_className     = className;
+			_properties    = properties;
+			_majorVersion  = majorVersion;
+		}
+
+		/** True for a class the JVM that made the entry couldn't load, so couldn't check. */
+		boolean unchecked() { return _canonicalName == null; }
+	}
+
+	static final int RUNNING_MAJOR_VERSION = runningMajorVersion();
+
+	private static int runningMajorVersion() {
+		String version = System.getProperty("java.specification.version", "1.8");
+		try {
+			// Java 8 is "1.8" and class file version 52; Java 9 is "9" and 53
+			return 44 + Integer.parseInt(version.startsWith("1.")? version.substring(2) : version);
+		} catch (NumberFormatException e) {
+			return Integer.MAX_VALUE;
+		}
+	}
+
+	final List<Entry> _entries = new ArrayList<Entry>();
+	final Map<String, Entry> _byClassName = new HashMap<String, Entry>();
+
+	// Benchmarks whose class files are too new for the running JVM
+	int _unsupportedClasses;
+
+	/** Keeps the entries the running JVM can run, checking any that weren't checked when they were found. */
+	BenchmarkIndex(List<Entry> entries) {
+		ClassLoader loader = BenchmarkIndex.class.getClassLoader();
+		for (Entry e: entries) {
+			if (e._majorVersion > RUNNING_MAJOR_VERSION) {
+				_unsupportedClasses++;
+				continue;
+			}
+			if (e.unchecked()) {
+				try {
+					e = check(Class.forName(e._className, false, loader), loader, e._majorVersion);
+				} catch (UnsupportedClassVersionError x) {
+					_unsupportedClasses++;
+					continue;
+				} catch (ClassNotFoundException x) {
+					continue;
+				} catch (NoClassDefFoundError x) {
+					continue;
+				}
+				if (e == null)
+					continue;
+			}
+			_entries.add(e);
+			_byClassName.put(e._className, e);
+		}
+	}
+
+	private static BenchmarkIndex _packedIndex;
+	private static boolean _packedIndexLoaded;
+
+	/** Returns the index packed with BumbleBench, or null if there isn't one or it shouldn't be used. */
+	static synchronized BenchmarkIndex load() throws IOException {
+		if (!_packedIndexLoaded) {
+			_packedIndex = USE_INDEX? read() : null;
+			_packedIndexLoaded = true;
+		}
+		return _packedIndex;
+	}
+
+	private static BenchmarkIndex read() throws IOException {
+		InputStream stream = BenchmarkIndex.class.getResourceAsStream(RESOURCE);
+		if (stream == null)
+			return null;
+		List<Entry> entries = new ArrayList<Entry>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
+		try {
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				if (line.startsWith("#") || line.trim().equals(""))
+					continue;
+				String[] fields = line.split("\t");
+				entries.add(new Entry(fields[0].equals("-")? null : fields[0], fields[1],
+					fields[2].equals("-")? null : fields[2], (fields.length >= 4)? Integer.parseInt(fields[3]) : 0));
+			}
+		} finally {
+			reader.close();
+		}
+		return new BenchmarkIndex(entries);
+	}
+
+	/** Returns the entry for the given class name, or null if it isn't a known benchmark. */
+	Entry find(String className) {
+		return _byClassName.get(className);
+	}
+
+	List<String> names(String[] packages) {
+		List<String> result = new ArrayList<String>();
+		for (Entry e: _entries)
+			result.add(Launcher.nameFromPath(e._canonicalName, packages));
+		return result;
+	}
+
+	/*
+	 * Scanning for benchmarks
+	 */
+
+	/** Finds the runnable benchmarks in the given jar file or class directory
+	 * by loading (but not initializing) every class in it.  Classes this JVM
+	 * can't load are returned as unchecked entries.
+	 */
+	static List<Entry> scan(String classPathEntry) throws IOException, ClassNotFoundException {
+		List<String> classFileNames = new ArrayList<String>();
+		File file = new File(classPathEntry);
+		if (file.isDirectory()) {
+			findClassFilesIn(file, "", classFileNames);
+		} else {
+			ZipFile jarFile = new ZipFile(classPathEntry);
+			for (java.util.Enumeration<?> enumeration = jarFile.entries(); enumeration.hasMoreElements(); ) {
+				ZipEntry entry = (ZipEntry) enumeration.nextElement();
+				classFileNames.add(entry.getName());
+			}
+			jarFile.close();
+		}
+
+		ClassLoader loader = BenchmarkIndex.class.getClassLoader();
+		List<Entry> result = new ArrayList<Entry>();
+		for (String entryName: classFileNames) {
+			if (entryName.endsWith(".class")) {
+				String className = entryName.substring(0, entryName.length()-6).replace('/','.');
+				try {
+					Class<?> c = Class.forName(className, false, loader); // Testcase <clinit> can be expensive, so load without initializing
+					Entry entry = check(c, loader, majorVersion(loader, entryName));
+					if (entry != null)
+						result.add(entry);
+				} catch (UnsupportedClassVersionError e) {
+					result.add(new Entry(null, className, null, majorVersion(loader, entryName)));
+				} catch (NoClassDefFoundError e) {}
+			}
+		}
+		return result;
+	}
+
+	/** Returns the entry for the given class if it's a runnable benchmark, or null. */
+	private static Entry check(Class<?> c, ClassLoader loader, int majorVersion) {
+		if (Modifier.isAbstract(c.getModifiers()) || !BumbleBench.class.isAssignableFrom(c) || !hasPublicNoArgConstructor(c))
+			return null;
+		String properties = "/" + c.getName().replace('.', '/') + ".properties";
+		if (loader.getResource(properties.substring(1)) == null)
+			properties = null;
+		return new Entry(c.getCanonicalName(), c.getName(), properties, majorVersion);
+	}
+
+	/** Reads the major version from a class file's header, or returns 0 if it can't. */
+	private static int majorVersion(ClassLoader loader, String classFileName) {
+		InputStream stream = loader.getResourceAsStream(classFileName);
+		if (stream == null)
+			return 0;
+		try {
+			DataInputStream data = new DataInputStream(stream);
+			if (data.readInt() != 0xCAFEBABE)
+				return 0;
+			data.readUnsignedShort(); // Minor version
+			return data.readUnsignedShort();
+		} catch (IOException e) {
+			return 0;
+		} finally {
+			try {
+				stream.close();
+			} catch (IOException e) {}
+		}
+	}
+
+	private static void findClassFilesIn(File directory, String prefix, List<String> result) {
+		File[] files = directory.listFiles();
+		if (files == null)
+			return;
+		Arrays.sort(files);
+		for (File f: files) {
+			if (f.isDirectory())
+				findClassFilesIn(f, prefix + f.getName() + "/", result);
+			else
+				result.add(prefix + f.getName());
+		}
+	}
+
+	private static boolean hasPublicNoArgConstructor(Class<?> c) {
+		// Classes like HumbleBench and ParallelBench are BumbleBenches, but
+		// can't be run directly, so don't offer them
+		try {
+			c.getConstructor();
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/** Writes the index of the benchmarks in the class directory or jar
+	 * named by the first argument to the file named by the second.  Used by
+	 * the build.
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length != 2) {
+			err().println("Usage: BenchmarkIndex <class directory or jar> <index file>");
+			System.exit(1);
+		}
+		List<Entry> entries = scan(args[0]);
+		PrintWriter writer = new PrintWriter(new FileWriter(args[1]));
+		try {
+			writer.println("# BumbleBench benchmark index: canonical name (- if unchecked), class name, properties resource, class file major version");
+			for (Entry e: entries)
+				writer.println((e.unchecked()? "-" : e._canonicalName) + "\t" + e._className + "\t" + ((e._properties == null)? "-" : e._properties) + "\t" + e._majorVersion);
+		} finally {
+			writer.close();
+		}
+		out().println("Indexed " + entries.size() + " benchmarks in " + args[1]);
+	}
+
+}
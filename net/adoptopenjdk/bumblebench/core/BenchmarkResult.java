@@ -0,0 +1,67 @@
+/*******************************************************************************
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*******************************************************************************/
+
+package net.adoptopenjdk.bumblebench.core;
+
+import java.util.List;
+
+/**
+ * The outcome of running one benchmark from the {@link Launcher}: its final
+ * score and uncertainty, or the reason it has none.
+ */
+final class BenchmarkResult {
+
+	final String  _name;
+	final float   _score;
+	final float   _uncertainty;
+	final boolean _verified;
+	final String  _error;
+
+	BenchmarkResult(String name, float score, float uncertainty, boolean verified, String error) {
+		_name        = name;
+		_score       = score;
+		_uncertainty = uncertainty;
+		_verified    = verified;
+		_error       = error;
+	}
+
+	static BenchmarkResult of(String name, BumbleBench instance) {
+		return new BenchmarkResult(name, instance.finalScore(), instance.finalUncertainty(), instance.verified(), null);
+	}
+
+	static BenchmarkResult failed(String name, Throwable t) {
+		return new BenchmarkResult(name, Float.NaN, Float.NaN, false, t.toString());
+	}
+
+	boolean succeeded() {
+		return _error == null && _verified;
+	}
+
+	static boolean allSucceeded(List<BenchmarkResult> results) {
+		for (BenchmarkResult r: results)
+			if (!r.succeeded())
+				return false;
+		return true;
+	}
+
+	String status() {
+		if (_error != null)
+			return "ERROR: " + _error;
+		else if (!_verified)
+			return "failed verification";
+		else
+			return "";
+	}
+
+}
@@ -0,0 +1,104 @@
+/*******************************************************************************
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*******************************************************************************/
+
+package net.adoptopenjdk.bumblebench.core;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Consumes values so the optimizer can't prove they are unused and remove
+ * the work that computed them.
+ * <p>
+ * Each primitive <tt>consume</tt> compares its argument with values read from
+ * volatile fields that are never equal to any argument, so the JIT must
+ * compute the argument, yet the comparison costs only a couple of loads and
+ * a branch.  Objects aren't compared at all: as in JMH, <tt>consume</tt> steps
+ * a pseudo-random number and, when the bits under a volatile mask are all
+ * zero, stores the object in a weak reference, so it may escape and can't be
+ * scalar replaced.  The mask widens each time, so this soon becomes rare
+ * enough to be free.
+ * <p>
+ * Every benchmark instance has its own Blackhole, available from
+ * {@link BumbleBench#blackhole}.  The fields it reads are padded on both
+ * sides so that the Blackholes of different <tt>ParallelBench</tt> workers
+ * never share a cache line.
+ */
+public final class Blackhole extends BlackholeRightPadding {
+
+	public Blackhole() {
+		int seed = (int)System.nanoTime();
+		_b1 = (byte)seed;       _b2 = (byte)(_b1 + 1);
+		_c1 = (char)seed;       _c2 = (char)(_c1 + 1);
+		_s1 = (short)seed;      _s2 = (short)(_s1 + 1);
+		_i1 = seed;             _i2 = _i1 + 1;
+		_l1 = seed;             _l2 = _l1 + 1;
+		_f1 = seed & 0xffff;    _f2 = _f1 + 1;  // Small enough that adding 1 makes a different float
+		_d1 = seed;             _d2 = _d1 + 1;
+		_bool1 = false;         _bool2 = true;
+		_random = seed;
+		_mask   = 1;
+	}
+
+	// Each value can equal at most one of the two fields, so the
+	// conditions below are always false, but the JIT can't know that.
+
+	public final void consume(boolean v) { if (v == _bool1 & v == _bool2) leak(v); }
+	public final void consume(byte v)    { if (v == _b1 & v == _b2) leak(v); }
+	public final void consume(char v)    { if (v == _c1 & v == _c2) leak(v); }
+	public final void consume(short v)   { if (v == _s1 & v == _s2) leak(v); }
+	public final void consume(int v)     { if (v == _i1 & v == _i2) leak(v); }
+	public final void consume(long v)    { if (v == _l1 & v == _l2) leak(v); }
+	public final void consume(float v)   { if (v == _f1 & v == _f2) leak(v); }
+	public final void consume(double v)  { if (v == _d1 & v == _d2) leak(v); }
+
+	public final void consume(Object v) {
+		int mask = _mask;
+		int random = _random = _random * 1664525 + 1013904223;
+		if ((random & mask) == 0) {
+			// Rarely, and more rarely each time, make the object reachable from here
+			_escaped = new WeakReference<Object>(v);
+			_mask = (mask << 1) + 1;
+		}
+	}
+
+	private static void leak(Object v) {
+		throw new IllegalStateException("Blackhole consumed an impossible value: " + v);
+	}
+
+}
+
+abstract class BlackholeLeftPadding {
+	long _p01, _p02, _p03, _p04, _p05, _p06, _p07, _p08;
+	long _p09, _p10, _p11, _p12, _p13, _p14, _p15, _p16;
+}
+
+// Superclass fields are laid out before subclass fields, so these stay between the paddings
+abstract class BlackholeFields extends BlackholeLeftPadding {
+	volatile boolean _bool1, _bool2;
+	volatile byte    _b1, _b2;
+	volatile char    _c1, _c2;
+	volatile short   _s1, _s2;
+	volatile int     _i1, _i2;
+	volatile long    _l1, _l2;
+	volatile float   _f1, _f2;
+	volatile double  _d1, _d2;
+	volatile int     _mask;
+	int              _random;
+	volatile Object  _escaped;
+}
+
+abstract class BlackholeRightPadding extends BlackholeFields {
+	long _q01, _q02, _q03, _q04, _q05, _q06, _q07, _q08;
+	long _q09, _q10, _q11, _q12, _q13, _q14, _q15, _q16;
+}
@@ -25,7 +25,6 @@ import java.net.MalformedURLException;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.util.Random;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 
 
@@ -37,7 +36,7 @@ import java.util.concurrent.BlockingQueue;
 
 public abstract class BumbleBench extends Util implements Runnable {
 
-	static final int SERIES_NUMBER   = 7;  // Increment whenever a change can alter reported benchmark scores
+	static final int SERIES_NUMBER   = 8;  // Increment whenever a change can alter reported benchmark scores
 	static final int VERSION_NUMBER  = 5;  // Increment whenever new features are added that new benchmarks may rely on
 	static final int REVISION_NUMBER = 10; // Increment whenever you want
 
@@ -96,6 +95,8 @@ public abstract class BumbleBench extends Util implements Runnable {
 	private float _uncertainty = 0.5F;
 	private float _maxPeakUncertainty = Float.POSITIVE_INFINITY;
 	private long  _startTime;
+	private String _phase = "warmup";
+	private boolean _verified;
 
 	/** Indicates that the user has requested additional information from the
 	 * benchmark, usually to follow its progress or understand its operation.
@@ -137,6 +138,8 @@ public abstract class BumbleBench extends Util implements Runnable {
 		if (VERBOSE)
 			out().println("attempt(" + target + ")");
 		float result = attempt(target);
+		if (JvmStartup.IS_STARTUP_CHILD)
+			JvmStartup.reportAttemptToParent(result);
 
 		// Analyze the results
 		//
@@ -196,7 +199,19 @@ public abstract class BumbleBench extends Util implements Runnable {
 			_uncertainty *= guessWasCorrect? CORRECT_GUESS_ADJUSTMENT : INCORRECT_GUESS_ADJUSTMENT;
 		}
 		_uncertainty = Math.min(_uncertainty, MAX_UNCERTAINTY); 
+		if (_recentResults != null && newEstimateWasSpecified)
+			recordResult(result);
+		if (_jitMonitor != null)
+			_jitMonitor.sample();
 		report(target, result, oldUncertainty, lowball, guessWasCorrect, runSucceeded);
+		recordAttempt(target, result, lowball, guessWasCorrect, runSucceeded);
+		if (_jitEvents != null)
+			_jitEvents.printPending();
+		if (_changepoints != null && newEstimateWasSpecified) {
+			ChangepointDetector.Shift shift = _changepoints.add((System.currentTimeMillis() - _startTime) / 1000.0, result, _phase);
+			if (shift != null)
+				out().println("   -- " + ChangepointDetector.describe(shift) + " --");
+		}
 		return guessWasCorrect;
 	}
 
@@ -207,6 +222,11 @@ public abstract class BumbleBench extends Util implements Runnable {
 
 	public float currentEstimatedScore(){ return _estimate; }
 
+	/** The score and uncertainty reported at the end of {@link #run}. */
+	final float   finalScore()       { return _maxPeak; }
+	final float   finalUncertainty() { return _uncertainty; }
+	final boolean verified()         { return _verified; }
+
 	static final boolean LOWBALL  = true;
 	static final boolean HIGHBALL = false;
 
@@ -221,49 +241,84 @@ public abstract class BumbleBench extends Util implements Runnable {
 	static final float   MAX_UNCERTAINTY            = option("maxUncertainty", 0.40F);
 	static final boolean TAME_UNCERTAINTY           = option("tameUncertainty", false);
 
+	static final String  STOPPING_RULE             = option("stoppingRule", "fixed");
+	static final float   CONFIDENCE_LEVEL          = option("confidenceLevel", 0.95F);
+	static final float   CONFIDENCE_TARGET_WIDTH   = option("confidenceTargetWidth", 0.02F);
+	static final int     CONFIDENCE_WINDOW         = option("confidenceWindow", 10);
+	static final int     CONFIDENCE_MIN_ITERATIONS = option("confidenceMinIterations", 10);
+	static final int     CONFIDENCE_MAX_ITERATIONS = option("confidenceMaxIterations", 200);
+
+	static final boolean CONFIDENCE_STOPPING_RULE = useConfidenceStoppingRule();
+
+	static final boolean WARMUP_UNTIL_JIT_QUIET = option("warmupUntilJitQuiet", false);
+	static final int     JIT_QUIET_ATTEMPTS     = option("jitQuietAttempts", 3);
+
+	private static boolean useConfidenceStoppingRule() {
+		if (STOPPING_RULE.equals("fixed"))
+			return false;
+		else if (STOPPING_RULE.equals("confidence"))
+			return true;
+		else
+			throw new Error("Unrecognized stoppingRule: \"" + STOPPING_RULE + "\"");
+	}
+
 	public void run() {
-		out().println("\n-= BumbleBench series " + SERIES_NUMBER + " version " + VERSION_NUMBER + "." + REVISION_NUMBER + " running " + _name + "  " + new java.util.Date() + " =-\n");
-		_startTime = System.currentTimeMillis();
+		reportBanner();
 		try {
 			_estimate = option("initialEstimate", 100F);
 			_uncertainty = 0.2F;
+			if (WARMUP_UNTIL_JIT_QUIET)
+				_jitMonitor = new JitActivityMonitor();
+			_jitEvents = JitEventMonitor.create();
+			if (_jitEvents != null && !_jitEvents.start(getClass().getName(), _startTime))
+				_jitEvents = null;
+			_antagonist = AllocationAntagonist.create();
+			if (_antagonist != null)
+				_antagonist.start("warmup");
 			reportHeader();
-			long startTime = System.currentTimeMillis();
-			long minEndTime = startTime + 1000 * MIN_WARMUP_SECONDS;
-			long maxEndTime = startTime + 1000 * MAX_WARMUP_SECONDS;
-			if (DEBUG) debug("Starting warmup");
-			while (true) {
-				long currentTime = System.currentTimeMillis();
-				if (currentTime > maxEndTime)
-					break;
-				else if (currentTime > minEndTime && _uncertainty <= WARMUP_TARGET_UNCERTAINTY)
-					break;
-				else if (_estimate >= Float.POSITIVE_INFINITY)
-					break;
-
-				if (DEBUG) debug("Warmup: runAttempt(HIGHBALL)...");
-				while (!runAttempt(HIGHBALL)) { if (currentTime > maxEndTime) break; }
-				if (DEBUG) debug("Warmup: runAttempt(LOWBALL)...");
-				while (!runAttempt(LOWBALL))  { if (currentTime > maxEndTime) break; }
-			}
-			if (DEBUG) debug("...Warmup completed: "+((System.currentTimeMillis()-startTime)/1000)+" seconds.");
-			out().println("   -- ballpark --");
-			for (int i = 0; i < BALLPARK_ITERATIONS; i+=2) {
-				while (!runAttempt(HIGHBALL)){}
-				while (!runAttempt(LOWBALL)){}
-			}
-			out().println("   -- finale --");
-			_maxPeak = _recentPeak;
-			_maxPeakUncertainty = Float.POSITIVE_INFINITY;
-			for (int i = 0; i < FINALE_ITERATIONS; i+=2) {
-				while (!runAttempt(HIGHBALL)){}
-				while (!runAttempt(LOWBALL)){}
-			}
+			if (CONFIDENCE_STOPPING_RULE)
+				runUntilConfident();
+			else
+				runFixedIterations();
 		} catch (InterruptedException e) {
 			out().println("   -- interrupted: " + e.getMessage() + " --");
 		}
+		if (_profiler != null)
+			_profiler.stop();
+		if (_jitEvents != null)
+			_jitEvents.stop();
+		if (_antagonist != null)
+			_antagonist.stop();
+
+		if (scoredByConfidenceInterval())
+			finish((float)_finaleResults.mean(), (float)_finaleResults.relativeConfidenceHalfWidth(CONFIDENCE_LEVEL));
+		else
+			finish(_maxPeak, _uncertainty);
+		if (_changepoints != null)
+			_changepoints.report(_results, _name);
+		if (_jitEvents != null)
+			_jitEvents.report(_results, _name);
+		if (_antagonist != null)
+			_antagonist.report(_results, _name);
+		if (_profiler != null)
+			_profiler.report(_results, _name);
+	}
+
+	final void reportBanner() {
+		out().println("\n-= BumbleBench series " + SERIES_NUMBER + " version " + VERSION_NUMBER + "." + REVISION_NUMBER + " running " + _name + "  " + new java.util.Date() + " =-\n");
+		_startTime = System.currentTimeMillis();
+	}
 
-		if (verify()) {
+	/** Verifies the benchmark, then records and prints its final score.
+	 * Benchmarks like {@link FootprintBench} that measure their score without
+	 * the search in {@link #run} call this with their own result.
+	 */
+	final void finish(float score, float uncertainty) {
+		_maxPeak     = score;
+		_uncertainty = uncertainty;
+		_verified = verify();
+		recordScore(_verified);
+		if (_verified) {
 			String score_prefix = "  " + _name + " score: ";
 			String uncertainty_prefix = "  uncertainty: ";
 
@@ -279,11 +334,159 @@ public abstract class BumbleBench extends Util implements Runnable {
 			}
 			out().println("\n" + score_prefix + String.format("%f",_maxPeak) + " (" + score(_maxPeak) + " " + logPoints(_maxPeak) + "%)");
 			out().println(uncertainty_prefix + percentage(_uncertainty) + "%");
+			if (CONFIDENCE_STOPPING_RULE && _finaleResults.count() >= 2) {
+				out().println("  " + percentage(CONFIDENCE_LEVEL).trim() + "% confidence interval: mean " + score(_finaleResults.mean())
+					+ " +/- " + percentage(_finaleResults.relativeConfidenceHalfWidth(CONFIDENCE_LEVEL)).trim() + "% from " + _finaleResults.count() + " attempt results");
+			}
 		} else {
 			out().println("ERROR: failed verification.");
 		}
 	}
 
+	/** The original stopping rule: a warmup lasting at least {@link #MIN_WARMUP_SECONDS}
+	 * followed by fixed numbers of ballpark and finale attempts.
+	 * <p>
+	 * With option <tt>warmupUntilJitQuiet</tt>, the minimum warmup time is
+	 * replaced by the requirement that the JIT has been quiet for the last
+	 * {@link #JIT_QUIET_ATTEMPTS} attempts; see {@link JitActivityMonitor}.
+	 */
+	final void runFixedIterations() throws InterruptedException {
+		long startTime = System.currentTimeMillis();
+		long minEndTime = startTime + 1000 * MIN_WARMUP_SECONDS;
+		long maxEndTime = startTime + 1000 * MAX_WARMUP_SECONDS;
+		if (DEBUG) debug("Starting warmup");
+		boolean timedOut = false;
+		while (true) {
+			long currentTime = System.currentTimeMillis();
+			if (currentTime > maxEndTime) {
+				timedOut = true;
+				break;
+			}
+			else if (_estimate >= Float.POSITIVE_INFINITY)
+				break;
+			else if (WARMUP_UNTIL_JIT_QUIET) {
+				if (jitIsQuiet() && _uncertainty <= WARMUP_TARGET_UNCERTAINTY)
+					break;
+			} else if (currentTime > minEndTime && _uncertainty <= WARMUP_TARGET_UNCERTAINTY)
+				break;
+
+			if (DEBUG) debug("Warmup: runAttempt(HIGHBALL)...");
+			while (!runAttempt(HIGHBALL)) { if (currentTime > maxEndTime) break; }
+			if (DEBUG) debug("Warmup: runAttempt(LOWBALL)...");
+			while (!runAttempt(LOWBALL))  { if (currentTime > maxEndTime) break; }
+		}
+		endWarmup(startTime, timedOut);
+		startPhase("ballpark");
+		for (int i = 0; i < BALLPARK_ITERATIONS; i+=2) {
+			while (!runAttempt(HIGHBALL)){}
+			while (!runAttempt(LOWBALL)){}
+		}
+		startPhase("finale");
+		_maxPeak = _recentPeak;
+		_maxPeakUncertainty = Float.POSITIVE_INFINITY;
+		for (int i = 0; i < FINALE_ITERATIONS; i+=2) {
+			while (!runAttempt(HIGHBALL)){}
+			while (!runAttempt(LOWBALL)){}
+		}
+	}
+
+	/** The confidence-interval stopping rule, selected with
+	 * <tt>-DBumbleBench.stoppingRule=confidence</tt>.
+	 * <p>
+	 * Rather than running for fixed times and iteration counts, this watches
+	 * the scores measured by the attempts.  Warmup ends as soon as the last
+	 * {@link #CONFIDENCE_WINDOW} results agree to within
+	 * {@link #CONFIDENCE_TARGET_WIDTH} (with no minimum warmup time), and the
+	 * finale then runs until the confidence interval on the mean of its
+	 * results is that tight too, or until {@link #CONFIDENCE_MAX_ITERATIONS}
+	 * attempts have been made.  Stable benchmarks therefore finish quickly, and
+	 * noisy ones keep going until they have earned their score.
+	 * <p>
+	 * The results are used rather than the estimates, because each estimate
+	 * is derived from the one before, so successive estimates are far from
+	 * independent and would give too narrow an interval.  The score is the
+	 * mean of the finale results, and the uncertainty is the relative half
+	 * width of its confidence interval, so the interval covers what is
+	 * reported.  Attempts that don't measure a score (as when
+	 * <tt>unspecifiedEstimate</tt> is set) don't contribute, and if too few
+	 * do, the score falls back to the peak, as with the fixed rule.
+	 */
+	final void runUntilConfident() throws InterruptedException {
+		_recentResults = new float[Math.max(CONFIDENCE_WINDOW, 2)];
+		long startTime = System.currentTimeMillis();
+		long maxEndTime = startTime + 1000 * MAX_WARMUP_SECONDS;
+		if (DEBUG) debug("Starting warmup");
+		boolean timedOut = false;
+		while (true) {
+			long currentTime = System.currentTimeMillis();
+			if (currentTime > maxEndTime) {
+				timedOut = true;
+				break;
+			}
+			else if (_estimate >= Float.POSITIVE_INFINITY)
+				break;
+			else if (_uncertainty <= WARMUP_TARGET_UNCERTAINTY && recentResultsAreConfident() && jitIsQuiet())
+				break;
+
+			while (!runAttempt(HIGHBALL)) { if (currentTime > maxEndTime) break; }
+			while (!runAttempt(LOWBALL))  { if (currentTime > maxEndTime) break; }
+		}
+		endWarmup(startTime, timedOut);
+		startPhase("finale");
+		_maxPeak = _recentPeak;
+		_maxPeakUncertainty = Float.POSITIVE_INFINITY;
+		_finaleResults.reset();
+		for (int attempts = 0; attempts < CONFIDENCE_MAX_ITERATIONS && _estimate < Float.POSITIVE_INFINITY; attempts += 2) {
+			if (_finaleResults.count() >= CONFIDENCE_MIN_ITERATIONS
+				&& _finaleResults.relativeConfidenceHalfWidth(CONFIDENCE_LEVEL) <= CONFIDENCE_TARGET_WIDTH)
+				break;
+			while (!runAttempt(HIGHBALL)){}
+			while (!runAttempt(LOWBALL)){}
+		}
+		if (DEBUG) debug("Finale stopped with " + _finaleResults.count() + " results");
+	}
+
+	private JitActivityMonitor _jitMonitor;
+
+	// Watches the attempt results for level shifts unless option detectChangepoints is false
+	private final ChangepointDetector _changepoints = ChangepointDetector.DETECT_CHANGEPOINTS? new ChangepointDetector() : null;
+
+	final void endWarmup(long startTime, boolean timedOut) {
+		if (DEBUG) debug("...Warmup completed: "+((System.currentTimeMillis()-startTime)/1000)+" seconds.");
+		if (timedOut && !jitIsQuiet())
+			out().println("   -- NOTE: warmup timed out while the JIT was still active --");
+	}
+
+	final boolean jitIsQuiet() {
+		return _jitMonitor == null || _jitMonitor.quietAttempts() >= JIT_QUIET_ATTEMPTS;
+	}
+
+	// Attempt results gathered by runAttempt for the confidence stopping rule
+	//
+	private float[] _recentResults;
+	private int     _numRecentResults;
+	private final Statistics _finaleResults = new Statistics();
+
+	final void recordResult(float result) {
+		_recentResults[_numRecentResults++ % _recentResults.length] = result;
+		if (_phase.equals("finale"))
+			_finaleResults.add(result);
+	}
+
+	final boolean recentResultsAreConfident() {
+		if (_numRecentResults < _recentResults.length)
+			return false;
+		Statistics recent = new Statistics();
+		for (float r: _recentResults)
+			recent.add(r);
+		return recent.relativeConfidenceHalfWidth(CONFIDENCE_LEVEL) <= CONFIDENCE_TARGET_WIDTH;
+	}
+
+	/** True when the confidence stopping rule has enough finale results to score the run by their mean. */
+	final boolean scoredByConfidenceInterval() {
+		return CONFIDENCE_STOPPING_RULE && _finaleResults.count() >= 2;
+	}
+
 	/** The main entry point for a BumbleBench program.
 	 * <p>
 	 * Can be overridden to provide additional startup or shutdown functionality
@@ -295,7 +498,9 @@ public abstract class BumbleBench extends Util implements Runnable {
 		if (watchdog != null)
 			watchdog.start();
 		try {
-			if (_targetScores == null)
+			if (_parallelWorker != null)
+				_parallelWorker.runAttempts();
+			else if (_targetScores == null)
 				run(); // Normal run
 			else
 				runAsWorker();
@@ -318,10 +523,8 @@ public abstract class BumbleBench extends Util implements Runnable {
 
 	volatile BlockingQueue<Float> _targetScores, _resultScores;
 
-	void makeWorker(int queueSize) {
-		_targetScores = new ArrayBlockingQueue<Float>(queueSize);
-		_resultScores = new ArrayBlockingQueue<Float>(queueSize);
-	}
+	// Set on the instances that a ParallelBench runs on its worker threads
+	volatile ParallelBench.Worker _parallelWorker;
 
 	void runAsWorker() {
 		BlockingQueue<Float> targetScores = _targetScores, resultScores = _resultScores;
@@ -335,22 +538,6 @@ public abstract class BumbleBench extends Util implements Runnable {
 		}
 	}
 
-	class WorkerThread extends Thread implements Runnable {
-		BumbleBench _workload;
-
-		public void run() {
-			try {
-				Launcher.runBumbleMainOn(_workload);
-			} catch (Exception e) {
-				throw new RuntimeException(e);
-			}
-		}
-
-		public WorkerThread(BumbleBench workload) {
-			_workload = workload;
-		}
-	}
-
 	/*
 	 * Watchdog functionality
 	 */
@@ -420,6 +607,89 @@ public abstract class BumbleBench extends Util implements Runnable {
 	String extraReportInfo()   { return ""; }
 	String extraReportHeader() { return ""; }
 
+	/** The current phase of {@link #run}: "warmup", "ballpark" or "finale". */
+	final String phase() { return _phase; }
+
+	final void startPhase(String phase) {
+		_phase = phase;
+		out().println("   -- " + phase + " --");
+		if (_jitEvents != null)
+			_jitEvents.startPhase(phase);
+		if (_antagonist != null)
+			_antagonist.startPhase(phase);
+		if (phase.equals("finale")) {
+			_profiler = FinaleProfiler.create();
+			if (_profiler != null)
+				_profiler.start(_name);
+		}
+	}
+
+	// Profiles the finale when option jfrFinale is set
+	FinaleProfiler _profiler;
+
+	// Streams JIT events into the attempt log when option jitEvents is set
+	JitEventMonitor _jitEvents;
+
+	// Allocates in the background when option antagonistRate is set
+	AllocationAntagonist _antagonist;
+
+	/*
+	 * Machine-readable results
+	 */
+
+	final ResultsSink _results = ResultsSink.instance();
+
+	void recordAttempt(float target, float result, boolean lowball, boolean guessWasCorrect, boolean runSucceeded) {
+		if (_results == null)
+			return;
+		ResultsSink.Record record = new ResultsSink.Record("attempt")
+			.put("benchmark",   _name)
+			.put("phase",       _phase)
+			.put("seconds",     (System.currentTimeMillis() - _startTime) / 1000.0)
+			.put("target",      target)
+			.put("result",      result)
+			.put("estimate",    _estimate)
+			.put("uncertainty", _uncertainty)
+			.put("maxPeak",     _maxPeak)
+			.put("peak",        _recentPeak)
+			.put("lowball",     lowball)
+			.put("succeeded",   runSucceeded)
+			.put("guessWasCorrect", guessWasCorrect);
+		if (_jitMonitor != null) {
+			record.put("compilationMillis", _jitMonitor.compilationMillis());
+			record.put("loadedClasses",     _jitMonitor.loadedClasses());
+		}
+		addExtraResults(record);
+		_results.write(record);
+	}
+
+	void recordScore(boolean verified) {
+		if (_results == null)
+			return;
+		ResultsSink.Record record = new ResultsSink.Record("score")
+			.put("benchmark",   _name)
+			.put("seconds",     (System.currentTimeMillis() - _startTime) / 1000.0)
+			.put("score",       _maxPeak)
+			.put("uncertainty", _uncertainty)
+			.put("verified",    verified)
+			.put("stoppingRule", STOPPING_RULE)
+			.put("series",      SERIES_NUMBER)
+			.put("version",     VERSION_NUMBER + "." + REVISION_NUMBER)
+			.put("date",        new java.text.SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ").format(new java.util.Date()))
+			.put("javaVersion", System.getProperty("java.runtime.version", System.getProperty("java.version")))
+			.put("javaVM",      System.getProperty("java.vm.name") + " " + System.getProperty("java.vm.version"));
+		if (scoredByConfidenceInterval()) {
+			record.put("confidenceLevel", CONFIDENCE_LEVEL);
+			record.put("confidenceMean", _finaleResults.mean());
+			record.put("confidenceHalfWidth", _finaleResults.relativeConfidenceHalfWidth(CONFIDENCE_LEVEL));
+			record.put("confidenceAttempts", _finaleResults.count());
+		}
+		_results.write(record);
+	}
+
+	/** Adds the values that {@link #extraReportInfo} prints to a results record. */
+	void addExtraResults(ResultsSink.Record record) {}
+
 	static final DecimalFormat ONE_DECIMAL_PLACE = initOneDecimalPlace();
 
 	private static DecimalFormat initOneDecimalPlace() {
@@ -430,7 +700,7 @@ public abstract class BumbleBench extends Util implements Runnable {
 
 	static final boolean SPREADSHEET_MODE = option("spreadsheetMode", false);
 
-	final String spreadsheet(double value) {
+	static String spreadsheet(double value) {
 		try {
 			return new java.math.BigDecimal(value).toString();
 		} catch (NumberFormatException e) {
@@ -446,7 +716,7 @@ public abstract class BumbleBench extends Util implements Runnable {
 			return String.format("%5ss", ONE_DECIMAL_PLACE.format(elapsedSeconds));
 	}
 
-	final String percentage(double value) {
+	static String percentage(double value) {
 		if (SPREADSHEET_MODE)
 			return spreadsheet(100*value);
 		else
@@ -455,7 +725,7 @@ public abstract class BumbleBench extends Util implements Runnable {
 
 	static final MathContext PRETTY_MODE = new MathContext(option("sigFigs", 4));
 
-	final String siSuffixed(String exponential) {
+	static String siSuffixed(String exponential) {
 		int eIndex = exponential.indexOf('E');
 		if (eIndex > 0) {
 			StringBuilder sb = new StringBuilder(exponential);
@@ -482,7 +752,7 @@ public abstract class BumbleBench extends Util implements Runnable {
 		return exponential;
 	}
 
-	final String pretty(double value) {
+	static String pretty(double value) {
 		if (Double.isNaN(value)) {
 			return "NaN";
 		} else try {
@@ -492,7 +762,7 @@ public abstract class BumbleBench extends Util implements Runnable {
 		}
 	}
 
-	final String logPoints(double value) {
+	static String logPoints(double value) {
 		if (value <= 0)
 			return "--";
 		else
@@ -502,14 +772,14 @@ public abstract class BumbleBench extends Util implements Runnable {
 	static final boolean DISPLAY_RAW_SCORES       = option("displayRawScores", false);
 	static final boolean REPORT_RECIPROCAL_SCORES = option("reportReciprocalScores", false);
 
-	final String rawScore(double value) {
+	static String rawScore(double value) {
 		if (REPORT_RECIPROCAL_SCORES)
 			return Double.toString(1/value);
 		else
 			return Double.toString(value);
 	}
 
-	final String score(double value) {
+	static String score(double value) {
 		if (SPREADSHEET_MODE)
 			return spreadsheet(value);
 		else if (DISPLAY_RAW_SCORES)
@@ -538,6 +808,11 @@ public abstract class BumbleBench extends Util implements Runnable {
 
 	public static Random newRandom(){ return new Random(RANDOM_SEED); }
 
+	private final Blackhole _blackhole = new Blackhole();
+
+	/** Consumes results that would otherwise be unused, so the optimizer can't remove the work that produced them. */
+	protected final Blackhole blackhole(){ return _blackhole; }
+
 	static final boolean VERBOSE_LOGN = option("verboseLogN", false);
 
 	protected static int log2(long n) {
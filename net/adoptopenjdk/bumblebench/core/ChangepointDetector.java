@@ -0,0 +1,212 @@
+/*******************************************************************************
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*******************************************************************************/
+
+package net.adoptopenjdk.bumblebench.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps the series of attempt results from a run and watches it for level
+ * shifts, such as those caused by deoptimization, recompilation or a change
+ * in GC behaviour.
+ * <p>
+ * Detection uses a two-sided Page-Hinkley test on the logarithms of the
+ * results, so shifts are judged by ratio rather than by absolute size.  The
+ * drift allowance <tt>changepointDrift</tt> and alarm threshold
+ * <tt>changepointThreshold</tt> are in units of the attempt-to-attempt noise,
+ * estimated robustly from the median absolute difference between successive
+ * results (which a level shift barely disturbs).  When the test fires, the
+ * shift is placed where the cumulative sum turned, and the test restarts
+ * from there.
+ * <p>
+ * At the end of the run, the ballpark and finale results are compared with
+ * Welch's t-test; if they differ at significance <tt>changepointAlpha</tt>,
+ * the finale is flagged as disagreeing with the ballpark.
+ */
+final class ChangepointDetector extends Util {
+
+	static final boolean DETECT_CHANGEPOINTS   = option("detectChangepoints", true);
+	static final double  CHANGEPOINT_DRIFT     = option("changepointDrift", 0.5);
+	static final double  CHANGEPOINT_THRESHOLD = option("changepointThreshold", 5.0);
+	static final double  CHANGEPOINT_ALPHA     = option("changepointAlpha", 0.01);
+
+	// Below this relative noise, a series is treated as this noisy, so tiny wobbles in very stable results aren't reported
+	static final double  MIN_RELATIVE_NOISE    = option("changepointMinNoise", 0.005);
+
+	static final int MIN_SAMPLES = 5;
+
+	/** A level shift, between the sample before <tt>_index</tt> and the one at it. */
+	static final class Shift {
+		final int    _index;
+		final double _seconds;
+		final double _before, _after; // Geometric means of the results on either side when detected
+
+		Shift(int index, double seconds, double before, double after) {
+			_index   = index;
+			_seconds = seconds;
+			_before  = before;
+			_after   = after;
+		}
+	}
+
+	private final List<Double> _seconds = new ArrayList<Double>();
+	private final List<Double> _logs    = new ArrayList<Double>();
+	private final List<String> _phases  = new ArrayList<String>();
+	private final List<Shift>  _shifts  = new ArrayList<Shift>();
+	private int _segmentStart;
+
+	/** Adds an attempt result, and returns the shift it revealed, if any. */
+	Shift add(double seconds, float result, String phase) {
+		if (!(result > 0 && result < Float.POSITIVE_INFINITY))
+			return null;
+		_seconds.add(seconds);
+		_logs.add(Math.log(result));
+		_phases.add(phase);
+		if (_logs.size() < MIN_SAMPLES)
+			return null;
+		Shift shift = detect(noise());
+		if (shift != null) {
+			_shifts.add(shift);
+			_segmentStart = shift._index;
+		}
+		return shift;
+	}
+
+	/** Robust estimate of the standard deviation of the log results. */
+	double noise() {
+		int n = _logs.size();
+		double[] differences = new double[n - 1];
+		for (int i = 1; i < n; i++)
+			differences[i-1] = Math.abs(_logs.get(i) - _logs.get(i-1));
+		Arrays.sort(differences);
+		double median = differences[differences.length / 2];
+		// For normal noise, successive differences have sigma*sqrt(2), so their median absolute value is 0.6745*sqrt(2) = 0.954 sigma
+		return Math.max(median / 0.954, MIN_RELATIVE_NOISE);
+	}
+
+	/** Runs the Page-Hinkley test over the current segment. */
+	Shift detect(double noise) {
+		double drift = CHANGEPOINT_DRIFT * noise, threshold = CHANGEPOINT_THRESHOLD * noise;
+		double mean = 0, up = 0, down = 0, minUp = 0, maxDown = 0;
+		int minUpIndex = _segmentStart, maxDownIndex = _segmentStart;
+		int n = 0;
+		for (int i = _segmentStart; i < _logs.size(); i++) {
+			double x = _logs.get(i);
+			n++;
+			mean += (x - mean) / n;
+			up   += x - mean - drift;
+			down += x - mean + drift;
+			if (up < minUp) {
+				minUp = up;
+				minUpIndex = i + 1;
+			}
+			if (down > maxDown) {
+				maxDown = down;
+				maxDownIndex = i + 1;
+			}
+			int changeIndex;
+			if (up - minUp > threshold)
+				changeIndex = minUpIndex;
+			else if (maxDown - down > threshold)
+				changeIndex = maxDownIndex;
+			else
+				continue;
+			if (changeIndex <= _segmentStart || changeIndex > i)
+				continue;
+			return new Shift(changeIndex, _seconds.get(changeIndex),
+				geometricMean(_segmentStart, changeIndex), geometricMean(changeIndex, i + 1));
+		}
+		return null;
+	}
+
+	double geometricMean(int from, int to) {
+		double sum = 0;
+		for (int i = from; i < to; i++)
+			sum += _logs.get(i);
+		return Math.exp(sum / (to - from));
+	}
+
+	static String describe(Shift shift) {
+		return "level shift at " + BumbleBench.pretty(shift._seconds) + "s: "
+			+ BumbleBench.score(shift._before) + " -> " + BumbleBench.score(shift._after)
+			+ " (" + signedPercentage(shift._after / shift._before - 1) + "%)";
+	}
+
+	static String signedPercentage(double fraction) {
+		return ((fraction >= 0)? "+" : "") + BumbleBench.percentage(fraction).trim();
+	}
+
+	/** Prints the shifts found during the run and compares the ballpark with the finale. */
+	void report(ResultsSink results, String benchmarkName) {
+		if (!_shifts.isEmpty()) {
+			out().println("\n  level shifts in " + _logs.size() + " attempt results:");
+			for (int s = 0; s < _shifts.size(); s++) {
+				Shift shift = _shifts.get(s);
+				int end = (s + 1 < _shifts.size())? _shifts.get(s+1)._index : _logs.size();
+				int start = (s > 0)? _shifts.get(s-1)._index : 0;
+				// Report the levels of the whole segments on either side, now that they're known
+				Shift settled = new Shift(shift._index, shift._seconds, geometricMean(start, shift._index), geometricMean(shift._index, end));
+				out().println("    " + describe(settled) + " in " + _phases.get(shift._index));
+				if (results != null)
+					results.write(new ResultsSink.Record("changepoint")
+						.put("benchmark", benchmarkName)
+						.put("attempt",   (long)shift._index)
+						.put("seconds",   shift._seconds)
+						.put("phase",     _phases.get(shift._index))
+						.put("before",    settled._before)
+						.put("after",     settled._after));
+			}
+		}
+		compareBallparkWithFinale(results, benchmarkName);
+	}
+
+	void compareBallparkWithFinale(ResultsSink results, String benchmarkName) {
+		Statistics ballpark = new Statistics(), finale = new Statistics();
+		for (int i = 0; i < _logs.size(); i++) {
+			if (_phases.get(i).equals("ballpark"))
+				ballpark.add(_logs.get(i));
+			else if (_phases.get(i).equals("finale"))
+				finale.add(_logs.get(i));
+		}
+		if (ballpark.count() < 2 || finale.count() < 2)
+			return;
+		double ballparkTerm = ballpark.variance() / ballpark.count();
+		double finaleTerm   = finale.variance()   / finale.count();
+		double standardError = Math.sqrt(ballparkTerm + finaleTerm);
+		double t = (finale.mean() - ballpark.mean()) / Math.max(standardError, Double.MIN_NORMAL);
+		double degreesOfFreedom = (ballparkTerm + finaleTerm) * (ballparkTerm + finaleTerm)
+			/ (ballparkTerm * ballparkTerm / (ballpark.count() - 1) + finaleTerm * finaleTerm / (finale.count() - 1));
+		long df = Math.max(1, (long)Math.floor(degreesOfFreedom));
+		double critical = Statistics.studentTQuantile(1 - CHANGEPOINT_ALPHA / 2, df);
+		boolean disagree = Math.abs(t) > critical;
+		double ratio = Math.exp(finale.mean() - ballpark.mean());
+		out().println("  ballpark vs finale: " + BumbleBench.score(Math.exp(ballpark.mean())) + " vs " + BumbleBench.score(Math.exp(finale.mean()))
+			+ " (" + signedPercentage(ratio - 1) + "%), Welch t " + BumbleBench.ONE_DECIMAL_PLACE.format(t) + " on " + df + " df"
+			+ (disagree? ": finale DISAGREES with ballpark at " + BumbleBench.percentage(1 - CHANGEPOINT_ALPHA).trim() + "% confidence" : ""));
+		if (results != null)
+			results.write(new ResultsSink.Record("phaseAgreement")
+				.put("benchmark",        benchmarkName)
+				.put("ballparkMean",     Math.exp(ballpark.mean()))
+				.put("finaleMean",       Math.exp(finale.mean()))
+				.put("ballparkAttempts", ballpark.count())
+				.put("finaleAttempts",   finale.count())
+				.put("welchT",           t)
+				.put("degreesOfFreedom", df)
+				.put("alpha",            CHANGEPOINT_ALPHA)
+				.put("disagree",         disagree));
+	}
+
+}
@@ -0,0 +1,110 @@
+/*******************************************************************************
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*******************************************************************************/
+
+package net.adoptopenjdk.bumblebench.core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures the CPU time used by the current thread, and how often it was
+ * context-switched, between calls to {@link #start} and {@link #stop}.
+ * <p>
+ * CPU time comes from {@link ThreadMXBean}; if the JVM can't measure it,
+ * {@link #cpuNanos} is -1.  Context switches come from
+ * <tt>/proc/thread-self/status</tt>, so they are only available on Linux;
+ * elsewhere they are -1.  Voluntary switches happen when the thread blocks;
+ * involuntary ones when the kernel preempts it, typically because something
+ * else wanted the CPU.
+ */
+final class CpuMeter {
+
+	static final File THREAD_STATUS = new File("/proc/thread-self/status");
+
+	private final ThreadMXBean _threads = cpuMeasuringThreadMXBean();
+	private final boolean _hasContextSwitches = THREAD_STATUS.canRead();
+
+	private long _startCpu, _startVoluntary, _startInvoluntary;
+	private long _cpu, _voluntary, _involuntary;
+
+	private static ThreadMXBean cpuMeasuringThreadMXBean() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		try {
+			if (bean.isCurrentThreadCpuTimeSupported()) {
+				if (!bean.isThreadCpuTimeEnabled())
+					bean.setThreadCpuTimeEnabled(true);
+				return bean;
+			}
+		} catch (UnsupportedOperationException e) {
+		}
+		return null;
+	}
+
+	private long currentCpuNanos() {
+		return (_threads == null)? -1 : _threads.getCurrentThreadCpuTime();
+	}
+
+	// Fills in counts[0] and counts[1] with the voluntary and involuntary switches so far
+	private void readContextSwitches(long[] counts) {
+		counts[0] = counts[1] = -1;
+		if (!_hasContextSwitches)
+			return;
+		try {
+			BufferedReader reader = new BufferedReader(new FileReader(THREAD_STATUS));
+			try {
+				for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+					if (line.startsWith("voluntary_ctxt_switches:"))
+						counts[0] = Long.parseLong(line.substring(line.indexOf(':') + 1).trim());
+					else if (line.startsWith("nonvoluntary_ctxt_switches:"))
+						counts[1] = Long.parseLong(line.substring(line.indexOf(':') + 1).trim());
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			counts[0] = counts[1] = -1;
+		}
+	}
+
+	private final long[] _switches = new long[2];
+
+	void start() {
+		readContextSwitches(_switches);
+		_startVoluntary   = _switches[0];
+		_startInvoluntary = _switches[1];
+		_startCpu = currentCpuNanos();
+	}
+
+	void stop() {
+		long cpu = currentCpuNanos();
+		readContextSwitches(_switches);
+		_cpu         = (cpu < 0 || _startCpu < 0)? -1 : cpu - _startCpu;
+		_voluntary   = (_switches[0] < 0 || _startVoluntary   < 0)? -1 : _switches[0] - _startVoluntary;
+		_involuntary = (_switches[1] < 0 || _startInvoluntary < 0)? -1 : _switches[1] - _startInvoluntary;
+	}
+
+	/** CPU time used by this thread during the last measured interval, or -1 if unknown. */
+	long cpuNanos() { return _cpu; }
+
+	/** Voluntary context switches during the last measured interval, or -1 if unknown. */
+	long voluntarySwitches() { return _voluntary; }
+
+	/** Involuntary context switches during the last measured interval, or -1 if unknown. */
+	long involuntarySwitches() { return _involuntary; }
+
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*******************************************************************************/
+
+package net.adoptopenjdk.bumblebench.core;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Profiles the finale phase of a run: started when the finale starts,
+ * stopped when it ends, and summarized after the score is reported.
+ * <p>
+ * Set option <tt>jfrFinale</tt> to record the finale with Java Flight
+ * Recorder.  The recording is written to <tt>jfrFile</tt>, or by default
+ * to a timestamped file next to the <tt>resultsFile</tt> (or in the current
+ * directory), and the <tt>jfrTop</tt> hottest methods and allocation sites
+ * are printed.  The JFR implementation is compiled separately, so on JVMs
+ * or builds without <tt>jdk.jfr</tt> the option just prints a note.
+ */
+abstract class FinaleProfiler extends Util {
+
+	static final boolean JFR_FINALE = option("jfrFinale", false);
+	static final String  JFR_FILE   = option("jfrFile", "");
+	static final int     JFR_TOP    = option("jfrTop", 10);
+
+	static final String JFR_IMPLEMENTATION = "net.adoptopenjdk.bumblebench.core.JfrFinaleProfiler";
+
+	/** Returns a new profiler, or null if none is requested or none is available. */
+	static FinaleProfiler create() {
+		if (!JFR_FINALE)
+			return null;
+		try {
+			try {
+				return (FinaleProfiler)Class.forName(JFR_IMPLEMENTATION).getDeclaredConstructor().newInstance();
+			} catch (java.lang.reflect.InvocationTargetException e) {
+				if (e.getCause() instanceof LinkageError)
+					throw (LinkageError)e.getCause();
+				throw e;
+			}
+		} catch (ClassNotFoundException e) {
+			out().println("NOTE: This build of BumbleBench has no JFR support; option jfrFinale is ignored");
+		} catch (LinkageError e) {
+			out().println("NOTE: This JVM has no JFR support; option jfrFinale is ignored");
+		} catch (Exception e) {
+			out().println("NOTE: Can't start JFR profiling: " + e);
+		}
+		return null;
+	}
+
+	abstract void start(String benchmarkName);
+	abstract void stop();
+	abstract void report(ResultsSink results, String benchmarkName);
+
+	static File recordingFile(String benchmarkName) {
+		if (!JFR_FILE.equals(""))
+			return new File(JFR_FILE);
+		File directory = null;
+		if (!ResultsSink.RESULTS_FILE.equals(""))
+			directory = new File(ResultsSink.RESULTS_FILE).getAbsoluteFile().getParentFile();
+		String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+		return new File(directory, benchmarkName + "-finale-" + timestamp + ".jfr");
+	}
+
+}
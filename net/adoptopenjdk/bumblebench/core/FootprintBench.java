@@ -0,0 +1,162 @@
+/*******************************************************************************
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*******************************************************************************/
+
+package net.adoptopenjdk.bumblebench.core;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+/**
+ * Base class for benchmarks that measure how much heap a data structure
+ * retains, rather than how fast something runs.
+ * <p>
+ * Subclasses implement {@link #build} to create one instance of the
+ * structure, and {@link #elementsPerInstance} to say how many elements it
+ * holds.  Each round builds <tt>footprintInstances</tt> of them, keeps them
+ * all reachable, and measures the growth of the used heap.  Before each
+ * heap reading, the heap is settled by calling <tt>System.gc()</tt> until the
+ * used heap reported by the {@link MemoryMXBean} has not fallen by more than
+ * <tt>footprintSettleBytes</tt> for <tt>footprintStableGCs</tt> collections
+ * in a row, or <tt>footprintMaxGCs</tt> collections have been made.  One
+ * stable reading isn't enough: the serial collector, for example, leaves
+ * some dead objects in place and only compacts fully every fourth full GC.
+ * <p>
+ * After <tt>footprintWarmupRounds</tt> unreported rounds (which let the JIT
+ * and class loading settle too), <tt>footprintRounds</tt> rounds are
+ * measured.  The run reports retained bytes per element and per instance,
+ * with a confidence interval.  Because scores are higher-is-better, the
+ * score is elements per megabyte, so that a footprint regression shows up
+ * as a drop in score.
+ */
+public abstract class FootprintBench extends BumbleBench {
+
+	/** Builds one instance of the structure being measured.  The result is
+	 * kept reachable until its footprint has been measured.
+	 */
+	protected abstract Object build();
+
+	/** The number of elements in each instance {@link #build} returns. */
+	protected int elementsPerInstance() { return 1; }
+
+	static final int  FOOTPRINT_INSTANCES     = Math.max(option("footprintInstances", 1000), 1);
+	static final int  FOOTPRINT_ROUNDS        = Math.max(option("footprintRounds", 10), 1);
+	static final int  FOOTPRINT_WARMUP_ROUNDS = option("footprintWarmupRounds", 3);
+	static final long FOOTPRINT_SETTLE_BYTES  = option("footprintSettleBytes", 1024L);
+	static final int  FOOTPRINT_STABLE_GCS    = option("footprintStableGCs", 4);
+	static final int  FOOTPRINT_MAX_GCS       = option("footprintMaxGCs", 30);
+
+	static final double BYTES_PER_MEGABYTE = 1024.0 * 1024.0;
+
+	private final MemoryMXBean _memory = ManagementFactory.getMemoryMXBean();
+
+	// Set by settledHeapUsed
+	private int     _settleGCs;
+	private boolean _settled;
+
+	/** Collects garbage until the used heap stops falling, and returns its lowest value. */
+	final long settledHeapUsed() {
+		long lowest = Long.MAX_VALUE;
+		int stableGCs = 0;
+		for (_settleGCs = 1; _settleGCs <= FOOTPRINT_MAX_GCS; _settleGCs++) {
+			System.gc();
+			long used = _memory.getHeapMemoryUsage().getUsed();
+			if (used < lowest - FOOTPRINT_SETTLE_BYTES)
+				stableGCs = 0;
+			else if (++stableGCs >= FOOTPRINT_STABLE_GCS) {
+				_settled = true;
+				return Math.min(used, lowest);
+			}
+			lowest = Math.min(used, lowest);
+		}
+		_settled = false;
+		return lowest;
+	}
+
+	// Results of the latest round
+	private long    _roundBytes;
+	private int     _roundGCs;
+	private boolean _roundSettled;
+
+	/** Measures one round and returns the retained bytes per element. */
+	final double measureRound() {
+		Object[] instances = new Object[FOOTPRINT_INSTANCES];
+		long before = settledHeapUsed();
+		boolean settled = _settled;
+		int gcs = _settleGCs;
+		for (int i = 0; i < instances.length; i++)
+			instances[i] = build();
+		long after = settledHeapUsed();
+		blackhole().consume(instances);
+		_roundBytes   = after - before;
+		_roundGCs     = gcs + _settleGCs;
+		_roundSettled = settled && _settled;
+		return (double)_roundBytes / ((long)FOOTPRINT_INSTANCES * elementsPerInstance());
+	}
+
+	/** Measures one round, for modes like <tt>measureStartup</tt> that run attempts. */
+	protected final float attempt(float targetScore) {
+		return (float)(BYTES_PER_MEGABYTE / measureRound());
+	}
+
+	public void run() {
+		reportBanner();
+		out().println("  Measuring " + FOOTPRINT_INSTANCES + " instances of " + elementsPerInstance() + " elements per round\n");
+		for (int i = 0; i < FOOTPRINT_WARMUP_ROUNDS; i++)
+			measureRound();
+
+		Statistics bytesPerElement = new Statistics();
+		int unsettledRounds = 0;
+		out().println("       round\tbytes/elem\tbytes/inst\tGCs");
+		for (int round = 1; round <= FOOTPRINT_ROUNDS; round++) {
+			double perElement = measureRound();
+			bytesPerElement.add(perElement);
+			if (!_roundSettled)
+				unsettledRounds++;
+			out().println(String.format("  %10d", round)
+				+ "\t" + pretty(perElement)
+				+ "\t" + pretty((double)_roundBytes / FOOTPRINT_INSTANCES)
+				+ "\t" + _roundGCs + (_roundSettled? "" : " (heap never settled)"));
+			if (_results != null)
+				_results.write(new ResultsSink.Record("footprintRound")
+					.put("benchmark",       _name)
+					.put("round",           (long)round)
+					.put("retainedBytes",   _roundBytes)
+					.put("bytesPerElement", perElement)
+					.put("gcs",             (long)_roundGCs)
+					.put("settled",         _roundSettled));
+		}
+
+		double halfWidth = (bytesPerElement.count() >= 2)? bytesPerElement.relativeConfidenceHalfWidth(CONFIDENCE_LEVEL) : 1.0;
+		out().println("\n  retained: " + pretty(bytesPerElement.mean()) + " bytes per element, "
+			+ pretty(bytesPerElement.mean() * elementsPerInstance()) + " bytes per instance, +/- "
+			+ percentage(halfWidth).trim() + "% at " + percentage(CONFIDENCE_LEVEL).trim() + "% confidence");
+		if (unsettledRounds >= 1)
+			out().println("  NOTE: the heap never settled in " + unsettledRounds + " of " + FOOTPRINT_ROUNDS + " rounds; try raising footprintSettleBytes or footprintMaxGCs");
+		if (_results != null)
+			_results.write(new ResultsSink.Record("footprint")
+				.put("benchmark",           _name)
+				.put("instances",           (long)FOOTPRINT_INSTANCES)
+				.put("elementsPerInstance", (long)elementsPerInstance())
+				.put("rounds",              bytesPerElement.count())
+				.put("bytesPerElement",     bytesPerElement.mean())
+				.put("bytesPerInstance",    bytesPerElement.mean() * elementsPerInstance())
+				.put("stddev",              bytesPerElement.standardDeviation())
+				.put("confidenceLevel",     CONFIDENCE_LEVEL)
+				.put("confidenceHalfWidth", halfWidth)
+				.put("unsettledRounds",     (long)unsettledRounds));
+
+		finish((float)(BYTES_PER_MEGABYTE / bytesPerElement.mean()), (float)halfWidth);
+	}
+
+}
@@ -0,0 +1,176 @@
+/*******************************************************************************
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*******************************************************************************/
+
+package net.adoptopenjdk.bumblebench.core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs a benchmark in a series of child JVMs and combines their scores.
+ * <p>
+ * Set option <tt>forks</tt> to the number of child JVMs.  Each child gets the
+ * same class path and the same <tt>BumbleBench.*</tt> options as the parent,
+ * plus any JVM arguments listed in option <tt>forkJvmArgs</tt>.  A child runs
+ * the benchmark normally (its output is passed through), then reports its
+ * final score to the parent on a marker line of its standard output.
+ * <p>
+ * Running each benchmark in a fresh JVM keeps profile pollution from other
+ * benchmarks out of its score, and running several of them exposes the
+ * JVM-to-JVM variance that a single run hides.  The parent reports the
+ * mean, min, max and a confidence interval across the forks.
+ */
+class Fork extends Util {
+
+	static final int     FORKS         = option("forks", 0);
+	static final String  FORK_JVM_ARGS = option("forkJvmArgs", "");
+	static final boolean IS_CHILD      = option("forkChild", false);
+
+	static final String RESULT_MARKER = "-= BumbleBench fork result: ";
+
+	final String _name;
+
+	Fork(String name) {
+		_name = name;
+	}
+
+	/** Called in the child JVM to pass its final score back to the parent. */
+	static void reportToParent(BumbleBench instance) {
+		out().println(RESULT_MARKER + instance.finalScore() + " " + instance.finalUncertainty() + " " + instance.verified());
+		out().flush();
+	}
+
+	BenchmarkResult run() throws IOException, InterruptedException {
+		List<BenchmarkResult> forkResults = new ArrayList<BenchmarkResult>();
+		for (int i = 1; i <= FORKS; i++) {
+			out().println("\n-= " + _name + " fork " + i + " of " + FORKS + " =-");
+			forkResults.add(runChild(childCommand()));
+		}
+		return summarize(forkResults);
+	}
+
+	List<String> childCommand() {
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		for (String arg: FORK_JVM_ARGS.trim().split("\\s+"))
+			if (!arg.equals(""))
+				command.add(arg);
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		if (System.getProperty("BumbleBench.propertyPrefix") != null)
+			command.add("-DBumbleBench.propertyPrefix=" + PROPERTY_PREFIX);
+		for (Map.Entry<Object, Object> property: System.getProperties().entrySet()) {
+			String key = property.getKey().toString();
+			if (key.startsWith(PROPERTY_PREFIX)
+				&& !key.equals(PROPERTY_PREFIX + "forks")
+				&& !key.equals(PROPERTY_PREFIX + "forkChild")
+				&& !key.startsWith(PROPERTY_PREFIX + Sweep.SWEEP_PREFIX))
+				command.add("-D" + key + "=" + property.getValue());
+		}
+		command.add("-D" + PROPERTY_PREFIX + "forkChild=true");
+		command.add(Launcher.class.getName());
+		command.add(_name);
+		return command;
+	}
+
+	BenchmarkResult runChild(List<String> command) throws IOException, InterruptedException {
+		if (BumbleBench.VERBOSE)
+			out().println("Fork command: " + command);
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.redirectErrorStream(true);
+		Process child = builder.start();
+		child.getOutputStream().close();
+
+		BenchmarkResult result = null;
+		BufferedReader childOut = new BufferedReader(new InputStreamReader(child.getInputStream()));
+		for (String line = childOut.readLine(); line != null; line = childOut.readLine()) {
+			if (line.startsWith(RESULT_MARKER)) {
+				String[] fields = line.substring(RESULT_MARKER.length()).trim().split(" ");
+				result = new BenchmarkResult(_name, Float.parseFloat(fields[0]), Float.parseFloat(fields[1]), Boolean.parseBoolean(fields[2]), null);
+			} else if (!childLine(line)) {
+				out().println(line);
+			}
+		}
+		childOut.close();
+
+		int exitValue = child.waitFor();
+		if (result == null)
+			return new BenchmarkResult(_name, Float.NaN, Float.NaN, false, "child JVM exited with status " + exitValue + " without reporting a score");
+		return result;
+	}
+
+	/** Called for each line the child writes other than its result; returns
+	 * true if the line was a marker meant for this parent, false if it
+	 * should be passed through.
+	 */
+	boolean childLine(String line) {
+		return false;
+	}
+
+	BenchmarkResult summarize(List<BenchmarkResult> forkResults) {
+		Statistics scores = new Statistics();
+		boolean verified = true;
+		String error = null;
+		for (BenchmarkResult r: forkResults) {
+			if (r._error != null)
+				error = r._error;
+			else
+				scores.add(r._score);
+			verified &= r._verified;
+		}
+
+		out().println("\n-= " + _name + " across " + forkResults.size() + " forks =-\n");
+		for (int i = 0; i < forkResults.size(); i++) {
+			BenchmarkResult r = forkResults.get(i);
+			if (r._error != null)
+				out().println(String.format("  fork %3d: %s", i+1, r.status()));
+			else
+				out().println(String.format("  fork %3d: %10s  +/- %s%%  %s", i+1, BumbleBench.score(r._score), BumbleBench.percentage(r._uncertainty).trim(), r.status()));
+		}
+		if (scores.count() == 0)
+			return new BenchmarkResult(_name, Float.NaN, Float.NaN, false, error);
+
+		float level = BumbleBench.CONFIDENCE_LEVEL;
+		double halfWidth = (scores.count() >= 2)? scores.relativeConfidenceHalfWidth(level) : forkResults.get(0)._uncertainty;
+		out().println("\n     mean: " + BumbleBench.score(scores.mean()));
+		out().println("      min: " + BumbleBench.score(scores.min()));
+		out().println("      max: " + BumbleBench.score(scores.max()));
+		if (scores.count() >= 2) {
+			out().println("   stddev: " + BumbleBench.percentage(scores.standardDeviation() / scores.mean()).trim() + "%");
+			out().println("  " + BumbleBench.percentage(level).trim() + "% confidence interval: +/- " + BumbleBench.percentage(halfWidth).trim() + "%");
+		}
+
+		ResultsSink results = ResultsSink.instance();
+		if (results != null) {
+			results.write(new ResultsSink.Record("forks")
+				.put("benchmark",       _name)
+				.put("forks",           (long)forkResults.size())
+				.put("scores",          scores.count())
+				.put("mean",            scores.mean())
+				.put("min",             scores.min())
+				.put("max",             scores.max())
+				.put("stddev",          scores.standardDeviation())
+				.put("confidenceLevel", level)
+				.put("confidenceHalfWidth", halfWidth)
+				.put("verified",        verified && error == null));
+		}
+		return new BenchmarkResult(_name, (float)scores.mean(), (float)halfWidth, verified, error);
+	}
+
+}
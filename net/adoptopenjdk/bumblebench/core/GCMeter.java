@@ -0,0 +1,92 @@
+/*******************************************************************************
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*******************************************************************************/
+
+package net.adoptopenjdk.bumblebench.core;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+/**
+ * Measures the garbage collection activity and the bytes allocated by the
+ * current thread between calls to {@link #start} and {@link #stop}.
+ * <p>
+ * GC counts and times come from the {@link GarbageCollectorMXBean}s, so they
+ * cover the whole JVM.  Allocated bytes need
+ * <tt>com.sun.management.ThreadMXBean</tt>; on JVMs that don't provide it,
+ * {@link #allocatedBytes} is -1.
+ */
+final class GCMeter {
+
+	private final List<GarbageCollectorMXBean> _collectors = ManagementFactory.getGarbageCollectorMXBeans();
+	private final ThreadMXBean _threads = allocationMeasuringThreadMXBean();
+
+	private long _startCount, _startMillis, _startAllocated;
+	private long _count, _millis, _allocated;
+
+	private static ThreadMXBean allocationMeasuringThreadMXBean() {
+		try {
+			ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if (bean instanceof com.sun.management.ThreadMXBean) {
+				com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean)bean;
+				if (sunBean.isThreadAllocatedMemorySupported()) {
+					sunBean.setThreadAllocatedMemoryEnabled(true);
+					return bean;
+				}
+			}
+		} catch (LinkageError e) {
+			// No com.sun.management on this JVM
+		} catch (UnsupportedOperationException e) {
+		}
+		return null;
+	}
+
+	private long currentAllocatedBytes() {
+		if (_threads == null)
+			return -1;
+		return ((com.sun.management.ThreadMXBean)_threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	void start() {
+		_startCount = _startMillis = 0;
+		for (GarbageCollectorMXBean gc: _collectors) {
+			_startCount  += Math.max(gc.getCollectionCount(), 0);
+			_startMillis += Math.max(gc.getCollectionTime(),  0);
+		}
+		_startAllocated = currentAllocatedBytes();
+	}
+
+	void stop() {
+		long allocated = currentAllocatedBytes();
+		long count = 0, millis = 0;
+		for (GarbageCollectorMXBean gc: _collectors) {
+			count  += Math.max(gc.getCollectionCount(), 0);
+			millis += Math.max(gc.getCollectionTime(),  0);
+		}
+		_count     = count  - _startCount;
+		_millis    = millis - _startMillis;
+		_allocated = (_threads == null)? -1 : allocated - _startAllocated;
+	}
+
+	/** Number of collections during the last measured interval. */
+	long collections() { return _count; }
+
+	/** Milliseconds spent collecting during the last measured interval. */
+	long collectionMillis() { return _millis; }
+
+	/** Bytes allocated by this thread during the last measured interval, or -1 if unknown. */
+	long allocatedBytes() { return _allocated; }
+
+}
@@ -0,0 +1,160 @@
+/*******************************************************************************
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*******************************************************************************/
+
+package net.adoptopenjdk.bumblebench.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * A {@link FinaleProfiler} using Java Flight Recorder.  Needs
+ * <tt>jdk.jfr</tt> to compile, so build.xml compiles it separately, and
+ * only loads it by name.
+ * <p>
+ * Hot methods come from <tt>jdk.ExecutionSample</tt> events, counted by
+ * their top frame.  Allocation sites come from
+ * <tt>jdk.ObjectAllocationSample</tt> events (Java 16 and later) or, on
+ * older JVMs, the TLAB allocation events, weighted by the bytes they
+ * represent.
+ */
+final class JfrFinaleProfiler extends FinaleProfiler {
+
+	static final long JFR_SAMPLE_MILLIS = option("jfrSampleMillis", 10L);
+
+	static final String EXECUTION_SAMPLE        = "jdk.ExecutionSample";
+	static final String ALLOCATION_SAMPLE       = "jdk.ObjectAllocationSample";
+	static final String ALLOCATION_IN_NEW_TLAB  = "jdk.ObjectAllocationInNewTLAB";
+	static final String ALLOCATION_OUTSIDE_TLAB = "jdk.ObjectAllocationOutsideTLAB";
+
+	Recording _recording;
+	File _file;
+
+	void start(String benchmarkName) {
+		_file = recordingFile(benchmarkName);
+		_recording = new Recording();
+		_recording.setName("BumbleBench " + benchmarkName + " finale");
+		_recording.enable(EXECUTION_SAMPLE).withPeriod(Duration.ofMillis(JFR_SAMPLE_MILLIS));
+		if (hasEventType(ALLOCATION_SAMPLE)) {
+			_recording.enable(ALLOCATION_SAMPLE).withStackTrace();
+		} else {
+			_recording.enable(ALLOCATION_IN_NEW_TLAB).withStackTrace();
+			_recording.enable(ALLOCATION_OUTSIDE_TLAB).withStackTrace();
+		}
+		_recording.start();
+	}
+
+	static boolean hasEventType(String name) {
+		for (EventType type: FlightRecorder.getFlightRecorder().getEventTypes())
+			if (type.getName().equals(name))
+				return true;
+		return false;
+	}
+
+	void stop() {
+		try {
+			_recording.stop();
+			_recording.dump(_file.toPath());
+		} catch (IOException e) {
+			out().println("NOTE: Can't write JFR recording " + _file + ": " + e);
+			_file = null;
+		} finally {
+			_recording.close();
+		}
+	}
+
+	void report(ResultsSink results, String benchmarkName) {
+		if (_file == null)
+			return;
+		Map<String, Long> methodSamples   = new HashMap<String, Long>();
+		Map<String, Long> allocationBytes = new HashMap<String, Long>();
+		try {
+			for (RecordedEvent event: RecordingFile.readAllEvents(_file.toPath())) {
+				String type = event.getEventType().getName();
+				if (type.equals(EXECUTION_SAMPLE))
+					add(methodSamples, topFrame(event.getStackTrace()), 1);
+				else if (type.equals(ALLOCATION_SAMPLE))
+					add(allocationBytes, allocationSite(event), event.getLong("weight"));
+				else if (type.equals(ALLOCATION_IN_NEW_TLAB))
+					add(allocationBytes, allocationSite(event), event.getLong("tlabSize"));
+				else if (type.equals(ALLOCATION_OUTSIDE_TLAB))
+					add(allocationBytes, allocationSite(event), event.getLong("allocationSize"));
+			}
+		} catch (IOException e) {
+			out().println("NOTE: Can't read JFR recording " + _file + ": " + e);
+			return;
+		}
+		out().println("\n  JFR recording of the finale: " + _file);
+		printTop(results, benchmarkName, "hotMethod",      "hot methods",      "samples", methodSamples);
+		printTop(results, benchmarkName, "allocationSite", "allocation sites", "bytes",   allocationBytes);
+	}
+
+	static void add(Map<String, Long> counts, String key, long amount) {
+		Long old = counts.get(key);
+		counts.put(key, (old == null)? amount : (old + amount));
+	}
+
+	static String topFrame(RecordedStackTrace stackTrace) {
+		if (stackTrace == null || stackTrace.getFrames().isEmpty())
+			return "(no stack trace)";
+		RecordedFrame frame = stackTrace.getFrames().get(0);
+		return frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+	}
+
+	static String allocationSite(RecordedEvent event) {
+		return topFrame(event.getStackTrace()) + " " + event.getClass("objectClass").getName();
+	}
+
+	static void printTop(ResultsSink results, String benchmarkName, String kind, String title, String unit, Map<String, Long> counts) {
+		long total = 0;
+		for (long count: counts.values())
+			total += count;
+		out().println("  top " + title + " (" + total + " " + unit + "):");
+		if (total == 0)
+			return;
+		List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>(counts.entrySet());
+		Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+			public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b) {
+				return b.getValue().compareTo(a.getValue());
+			}
+		});
+		for (int i = 0; i < Math.min(JFR_TOP, entries.size()); i++) {
+			Map.Entry<String, Long> entry = entries.get(i);
+			double fraction = (double)entry.getValue() / total;
+			out().println("    " + BumbleBench.percentage(fraction) + "%  " + entry.getKey());
+			if (results != null)
+				results.write(new ResultsSink.Record(kind)
+					.put("benchmark", benchmarkName)
+					.put("rank",      (long)(i + 1))
+					.put("site",      entry.getKey())
+					.put(unit,        entry.getValue().longValue())
+					.put("fraction",  fraction));
+		}
+	}
+
+}
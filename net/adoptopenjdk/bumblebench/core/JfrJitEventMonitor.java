@@ -0,0 +1,106 @@
+/*******************************************************************************
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*******************************************************************************/
+
+package net.adoptopenjdk.bumblebench.core;
+
+import java.time.Duration;
+import java.util.function.Consumer;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedMethod;
+import jdk.jfr.consumer.RecordingStream;
+
+/**
+ * A {@link JitEventMonitor} using a JFR {@link RecordingStream}.  Needs
+ * Java 14 or later to compile, so build.xml compiles it separately, and
+ * only loads it by name.
+ */
+final class JfrJitEventMonitor extends JitEventMonitor {
+
+	static final String COMPILATION_EVENT     = "jdk.Compilation";
+	static final String DEOPTIMIZATION_EVENT  = "jdk.Deoptimization";
+	static final String CODE_CACHE_FULL_EVENT = "jdk.CodeCacheFull";
+
+	RecordingStream _stream;
+
+	boolean startStreaming() {
+		try {
+			_stream = new RecordingStream();
+			_stream.enable(COMPILATION_EVENT).withThreshold(Duration.ZERO);
+			_stream.enable(DEOPTIMIZATION_EVENT);
+			_stream.enable(CODE_CACHE_FULL_EVENT);
+			_stream.onEvent(COMPILATION_EVENT, new Consumer<RecordedEvent>() {
+				public void accept(RecordedEvent event) { compiled(event); }
+			});
+			_stream.onEvent(DEOPTIMIZATION_EVENT, new Consumer<RecordedEvent>() {
+				public void accept(RecordedEvent event) { deoptimized(event); }
+			});
+			_stream.onEvent(CODE_CACHE_FULL_EVENT, new Consumer<RecordedEvent>() {
+				public void accept(RecordedEvent event) { codeCacheFull(event); }
+			});
+			_stream.startAsync();
+			return true;
+		} catch (Exception e) {
+			out().println("NOTE: Can't stream JIT events: " + e);
+			return false;
+		}
+	}
+
+	void stopStreaming() {
+		if (_stream == null)
+			return;
+		try {
+			_stream.getClass().getMethod("stop").invoke(_stream);
+		} catch (NoSuchMethodException e) {
+			// Before Java 20 there's no way to flush the stream; some events may be missed
+		} catch (Exception e) {
+			out().println("NOTE: Error stopping JFR stream: " + e);
+		}
+		_stream.close();
+	}
+
+	static String methodName(RecordedMethod method) {
+		return (method == null)? "(unknown method)" : method.getType().getName() + "." + method.getName();
+	}
+
+	static String className(RecordedMethod method) {
+		return (method == null)? "" : method.getType().getName();
+	}
+
+	void compiled(RecordedEvent event) {
+		RecordedMethod method = event.getValue("method");
+		boolean succeeded = event.getBoolean("succeded"); // Sic
+		StringBuilder sb = new StringBuilder(succeeded? "compiled " : "FAILED to compile ");
+		sb.append(methodName(method));
+		sb.append(" tier ").append(event.getShort("compileLevel"));
+		if (event.getBoolean("isOsr"))
+			sb.append(" OSR");
+		sb.append(" in ").append(LatencyBench.nanos(event.getDuration().toNanos()));
+		_pending.add(new Event(event.getStartTime().toEpochMilli(), succeeded? COMPILATION : FAILED_COMPILATION, className(method), sb.toString()));
+	}
+
+	void deoptimized(RecordedEvent event) {
+		RecordedMethod method = event.getValue("method");
+		String description = "deoptimized " + methodName(method)
+			+ " line " + event.getInt("lineNumber")
+			+ " (" + event.getString("reason") + ", " + event.getString("action") + ")";
+		_pending.add(new Event(event.getStartTime().toEpochMilli(), DEOPTIMIZATION, className(method), description));
+	}
+
+	void codeCacheFull(RecordedEvent event) {
+		String description = "CODE CACHE FULL (" + event.getString("codeBlobType") + ")";
+		_pending.add(new Event(event.getStartTime().toEpochMilli(), CODE_CACHE_FULL, "", description));
+	}
+
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*******************************************************************************/
+
+package net.adoptopenjdk.bumblebench.core;
+
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Watches JIT compilation time and class loading between attempts, to tell
+ * when the JVM has stopped compiling and loading code.
+ * <p>
+ * An attempt counts as quiet if the total compilation time grew by no more
+ * than <tt>jitQuietMillis</tt> and no classes were loaded while it ran.
+ * Some JVMs can't report compilation time; on those, only class loading is
+ * watched.
+ */
+final class JitActivityMonitor extends Util {
+
+	static final long JIT_QUIET_MILLIS = option("jitQuietMillis", 0L);
+
+	private final CompilationMXBean  _compilation;
+	private final ClassLoadingMXBean _classLoading = ManagementFactory.getClassLoadingMXBean();
+
+	private long _lastCompilationMillis;
+	private long _lastLoadedClasses;
+	private long _compilationMillis;  // During the most recent attempt
+	private long _loadedClasses;      // During the most recent attempt
+	private int  _quietAttempts;
+
+	JitActivityMonitor() {
+		CompilationMXBean compilation = ManagementFactory.getCompilationMXBean();
+		if (compilation != null && !compilation.isCompilationTimeMonitoringSupported()) {
+			out().println("NOTE: This JVM doesn't report compilation time; JIT quiescence is judged by class loading only");
+			compilation = null;
+		}
+		_compilation = compilation;
+		_lastCompilationMillis = totalCompilationMillis();
+		_lastLoadedClasses = _classLoading.getTotalLoadedClassCount();
+	}
+
+	private long totalCompilationMillis() {
+		return (_compilation == null)? 0 : _compilation.getTotalCompilationTime();
+	}
+
+	/** Called after each attempt. */
+	void sample() {
+		long compilationMillis = totalCompilationMillis();
+		long loadedClasses = _classLoading.getTotalLoadedClassCount();
+		_compilationMillis = compilationMillis - _lastCompilationMillis;
+		_loadedClasses     = loadedClasses - _lastLoadedClasses;
+		_lastCompilationMillis = compilationMillis;
+		_lastLoadedClasses     = loadedClasses;
+		if (_compilationMillis <= JIT_QUIET_MILLIS && _loadedClasses == 0)
+			_quietAttempts++;
+		else
+			_quietAttempts = 0;
+	}
+
+	/** Number of consecutive quiet attempts up to and including the most recent one. */
+	int quietAttempts() { return _quietAttempts; }
+
+	long compilationMillis() { return _compilationMillis; }
+	long loadedClasses()     { return _loadedClasses; }
+
+}
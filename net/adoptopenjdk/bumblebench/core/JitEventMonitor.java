@@ -0,0 +1,157 @@
+/*******************************************************************************
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*******************************************************************************/
+
+package net.adoptopenjdk.bumblebench.core;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Reports JIT compilations, deoptimizations and code cache exhaustion as
+ * they happen, so that an attempt that suddenly fails can be matched with
+ * what the JIT was doing.
+ * <p>
+ * Set option <tt>jitEvents</tt> to stream these events from Java Flight
+ * Recorder.  After each attempt, the events that have arrived since the last
+ * one are printed in the attempt log, with the seconds since the start of
+ * the run, for methods whose class name starts with <tt>jitEventsFilter</tt>
+ * (by default, the benchmark's own class; set it to <tt>*</tt> for all
+ * methods).  JFR delivers streamed events about once a second, so an event
+ * can appear an attempt or two after it happened; its time tells where it
+ * belongs.  After the score, the events of all methods are counted by the
+ * phase in which they happened.
+ * <p>
+ * The implementation needs JFR event streaming (Java 14 and later), so
+ * build.xml compiles it separately, and it is only loaded by name.
+ */
+abstract class JitEventMonitor extends Util {
+
+	static final boolean JIT_EVENTS        = option("jitEvents", false);
+	static final String  JIT_EVENTS_FILTER = option("jitEventsFilter", "");
+
+	static final String JFR_IMPLEMENTATION = "net.adoptopenjdk.bumblebench.core.JfrJitEventMonitor";
+
+	static final int COMPILATION = 0, FAILED_COMPILATION = 1, DEOPTIMIZATION = 2, CODE_CACHE_FULL = 3;
+	static final String[] KIND_NAMES = { "compilations", "failedCompilations", "deoptimizations", "codeCacheFull" };
+
+	/** One event, described by the streaming thread for the benchmark thread to print. */
+	static final class Event {
+		final long    _epochMillis;
+		final int     _kind;
+		final String  _className;
+		final String  _description;
+
+		Event(long epochMillis, int kind, String className, String description) {
+			_epochMillis = epochMillis;
+			_kind        = kind;
+			_className   = className;
+			_description = description;
+		}
+	}
+
+	/** Returns a new monitor, or null if none is requested or none is available. */
+	static JitEventMonitor create() {
+		if (!JIT_EVENTS)
+			return null;
+		try {
+			try {
+				return (JitEventMonitor)Class.forName(JFR_IMPLEMENTATION).getDeclaredConstructor().newInstance();
+			} catch (java.lang.reflect.InvocationTargetException e) {
+				if (e.getCause() instanceof LinkageError)
+					throw (LinkageError)e.getCause();
+				throw e;
+			}
+		} catch (ClassNotFoundException e) {
+			out().println("NOTE: This build of BumbleBench has no JFR streaming support; option jitEvents is ignored");
+		} catch (LinkageError e) {
+			out().println("NOTE: This JVM has no JFR streaming support; option jitEvents is ignored");
+		} catch (Exception e) {
+			out().println("NOTE: Can't stream JIT events: " + e);
+		}
+		return null;
+	}
+
+	/** Starts streaming events; returns false if that isn't possible. */
+	abstract boolean startStreaming();
+
+	/** Stops streaming, delivering what has been recorded so far if the JVM allows. */
+	abstract void stopStreaming();
+
+	final ConcurrentLinkedQueue<Event> _pending = new ConcurrentLinkedQueue<Event>();
+
+	private String _filter;
+	private long   _startMillis;
+
+	// Phase names, and the times they started, for counting events by phase
+	private final List<String> _phases = new ArrayList<String>();
+	private final List<Long>   _phaseStarts = new ArrayList<Long>();
+	private final Map<String, long[]> _counts = new LinkedHashMap<String, long[]>();
+
+	final boolean start(String benchmarkClassName, long startMillis) {
+		_filter = JIT_EVENTS_FILTER.equals("")? benchmarkClassName : JIT_EVENTS_FILTER.equals("*")? "" : JIT_EVENTS_FILTER;
+		_startMillis = startMillis;
+		startPhase("warmup");
+		return startStreaming();
+	}
+
+	final void startPhase(String phase) {
+		_phases.add(phase);
+		_phaseStarts.add(System.currentTimeMillis());
+		_counts.put(phase, new long[KIND_NAMES.length]);
+	}
+
+	String phaseAt(long epochMillis) {
+		int p = 0;
+		while (p + 1 < _phaseStarts.size() && _phaseStarts.get(p + 1) <= epochMillis)
+			p++;
+		return _phases.get(p);
+	}
+
+	/** Called after each attempt to print and count the events that have arrived. */
+	final void printPending() {
+		for (Event e = _pending.poll(); e != null; e = _pending.poll()) {
+			_counts.get(phaseAt(e._epochMillis))[e._kind]++;
+			if (e._kind == CODE_CACHE_FULL || e._className.startsWith(_filter))
+				out().println("   -- JIT " + BumbleBench.pretty((e._epochMillis - _startMillis) / 1000.0) + "s: " + e._description + " --");
+		}
+	}
+
+	final void stop() {
+		stopStreaming();
+		printPending();
+	}
+
+	void report(ResultsSink results, String benchmarkName) {
+		out().println("\n  JIT events by phase:\tcompiled\tfailed\tdeopt\tcodeCacheFull");
+		for (Map.Entry<String, long[]> entry: _counts.entrySet()) {
+			long[] counts = entry.getValue();
+			StringBuilder sb = new StringBuilder("    " + entry.getKey() + "\t");
+			for (long count: counts)
+				sb.append('\t').append(count);
+			out().println(sb);
+			if (results != null) {
+				ResultsSink.Record record = new ResultsSink.Record("jitEvents")
+					.put("benchmark", benchmarkName)
+					.put("phase",     entry.getKey());
+				for (int kind = 0; kind < KIND_NAMES.length; kind++)
+					record.put(KIND_NAMES[kind], counts[kind]);
+				results.write(record);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,251 @@
+/*******************************************************************************
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*******************************************************************************/
+
+package net.adoptopenjdk.bumblebench.core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the startup of a whole JVM running a benchmark, by launching it
+ * repeatedly in child processes the way {@link Fork} does.
+ * <p>
+ * Set option <tt>jvmStartup</tt> to the number of launches.  The child
+ * writes a marker line after each attempt, and the parent notes when it
+ * reads it, so no clock is shared between the processes.  For each launch
+ * the parent reports the time from starting the process to the end of the
+ * first attempt, the time to the first attempt scoring within
+ * <tt>peakTolerance</tt> of the child's final score, the time until the
+ * process exits, and the child's peak resident set size (<tt>VmHWM</tt> from
+ * <tt>/proc/self/status</tt>, so only on Linux).
+ * <p>
+ * With option <tt>appCds</tt>, a first training launch writes an AppCDS
+ * archive with <tt>-XX:ArchiveClassesAtExit</tt> (HotSpot, JDK 13 and
+ * later), and the measured launches then alternate between running without
+ * it and with <tt>-XX:SharedArchiveFile</tt>, so the two can be compared.
+ * The archive goes to <tt>appCdsArchive</tt>, or to a temporary file that
+ * is deleted afterwards.
+ */
+final class JvmStartup extends Fork {
+
+	static final int     LAUNCHES         = option("jvmStartup", 0);
+	static final float   PEAK_TOLERANCE   = option("peakTolerance", 0.1F);
+	static final boolean APP_CDS          = option("appCds", false);
+	static final String  APP_CDS_ARCHIVE  = option("appCdsArchive", "");
+	static final boolean IS_STARTUP_CHILD = option("jvmStartupChild", false);
+
+	static final String ATTEMPT_MARKER  = "-= BumbleBench attempt result: ";
+	static final String PEAK_RSS_MARKER = "-= BumbleBench peak RSS kB: ";
+
+	static final File PROCESS_STATUS = new File("/proc/self/status");
+
+	/** Called in the child JVM after each attempt. */
+	static void reportAttemptToParent(float result) {
+		out().println(ATTEMPT_MARKER + result);
+		out().flush();
+	}
+
+	/** Called in the child JVM once the benchmark has finished. */
+	static void reportPeakRssToParent() {
+		out().println(PEAK_RSS_MARKER + peakRssKilobytes());
+		out().flush();
+	}
+
+	static long peakRssKilobytes() {
+		try {
+			BufferedReader reader = new BufferedReader(new FileReader(PROCESS_STATUS));
+			try {
+				for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+					if (line.startsWith("VmHWM:"))
+						return Long.parseLong(line.substring(6).trim().split("\\s+")[0]);
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+		}
+		return -1;
+	}
+
+	/** What one launch measured. */
+	static final class Launch {
+		final String _config;
+		BenchmarkResult _result;
+		long _firstAttemptNanos = -1, _peakNanos = -1, _exitNanos = -1;
+		long _peakRssKilobytes = -1;
+
+		Launch(String config) { _config = config; }
+	}
+
+	// The JVM arguments for the next launch
+	List<String> _jvmArgs = new ArrayList<String>();
+
+	// What the current launch has reported so far
+	long _launchStart;
+	List<Long>  _attemptNanos   = new ArrayList<Long>();
+	List<Float> _attemptResults = new ArrayList<Float>();
+	long _peakRss;
+
+	JvmStartup(String name) {
+		super(name);
+	}
+
+	List<String> childCommand() {
+		List<String> command = super.childCommand();
+		command.addAll(1, _jvmArgs);
+		command.add(command.size() - 2, "-D" + PROPERTY_PREFIX + "jvmStartupChild=true");
+		return command;
+	}
+
+	boolean childLine(String line) {
+		if (line.startsWith(ATTEMPT_MARKER)) {
+			_attemptNanos.add(System.nanoTime() - _launchStart);
+			_attemptResults.add(Float.parseFloat(line.substring(ATTEMPT_MARKER.length()).trim()));
+			return true;
+		} else if (line.startsWith(PEAK_RSS_MARKER)) {
+			_peakRss = Long.parseLong(line.substring(PEAK_RSS_MARKER.length()).trim());
+			return true;
+		}
+		return false;
+	}
+
+	Launch launch(String config, List<String> jvmArgs) throws IOException, InterruptedException {
+		Launch launch = new Launch(config);
+		_jvmArgs = jvmArgs;
+		_attemptNanos.clear();
+		_attemptResults.clear();
+		_peakRss = -1;
+		_launchStart = System.nanoTime();
+		launch._result = runChild(childCommand());
+		launch._exitNanos = System.nanoTime() - _launchStart;
+		launch._peakRssKilobytes = _peakRss;
+		if (!_attemptNanos.isEmpty())
+			launch._firstAttemptNanos = _attemptNanos.get(0);
+		float peak = launch._result._score;
+		for (int i = 0; i < _attemptResults.size(); i++) {
+			float result = _attemptResults.get(i);
+			if (result > 0 && result < Float.POSITIVE_INFINITY && result >= peak * (1 - PEAK_TOLERANCE)) {
+				launch._peakNanos = _attemptNanos.get(i);
+				break;
+			}
+		}
+		return launch;
+	}
+
+	/** Runs all the launches and reports them; returns true if they all succeeded. */
+	boolean runLaunches() throws IOException, InterruptedException {
+		List<String> noArgs = new ArrayList<String>();
+		List<String> cdsArgs = null;
+		File archive = null;
+		if (APP_CDS) {
+			archive = APP_CDS_ARCHIVE.equals("")? File.createTempFile("BumbleBench-" + _name, ".jsa") : new File(APP_CDS_ARCHIVE);
+			if (APP_CDS_ARCHIVE.equals(""))
+				archive.deleteOnExit();
+			archive.delete(); // The JVM won't overwrite it
+			out().println("\n-= " + _name + " AppCDS training run, archive " + archive + " =-");
+			List<String> trainingArgs = new ArrayList<String>();
+			trainingArgs.add("-XX:ArchiveClassesAtExit=" + archive);
+			Launch training = launch("training", trainingArgs);
+			if (!archive.exists()) {
+				out().println("ERROR: AppCDS training run did not create " + archive + ": " + training._result.status());
+				return false;
+			}
+			cdsArgs = new ArrayList<String>();
+			cdsArgs.add("-XX:SharedArchiveFile=" + archive);
+		}
+
+		List<Launch> launches = new ArrayList<Launch>();
+		for (int i = 1; i <= LAUNCHES; i++) {
+			out().println("\n-= " + _name + " JVM startup launch " + i + " of " + LAUNCHES + " =-");
+			launches.add(launch("default", noArgs));
+			if (cdsArgs != null) {
+				out().println("\n-= " + _name + " JVM startup launch " + i + " of " + LAUNCHES + " with AppCDS =-");
+				launches.add(launch("appcds", cdsArgs));
+			}
+		}
+
+		out().println("\n-= " + _name + " JVM startup across " + LAUNCHES + " launches =-\n");
+		out().println("  config\tfirst\t" + BumbleBench.percentage(1 - PEAK_TOLERANCE).trim() + "%peak\texit\tpeakRSS\tscore\tstatus");
+		boolean allSucceeded = true;
+		ResultsSink results = ResultsSink.instance();
+		for (Launch launch: launches) {
+			allSucceeded &= launch._result.succeeded();
+			out().println("  " + launch._config
+				+ "\t" + nanos(launch._firstAttemptNanos)
+				+ "\t" + nanos(launch._peakNanos)
+				+ "\t" + nanos(launch._exitNanos)
+				+ "\t" + kilobytes(launch._peakRssKilobytes)
+				+ "\t" + BumbleBench.score(launch._result._score)
+				+ "\t" + launch._result.status());
+			if (results != null)
+				results.write(new ResultsSink.Record("jvmStartupLaunch")
+					.put("benchmark",         _name)
+					.put("config",            launch._config)
+					.put("firstAttemptNanos", launch._firstAttemptNanos)
+					.put("peakNanos",         launch._peakNanos)
+					.put("peakTolerance",     PEAK_TOLERANCE)
+					.put("exitNanos",         launch._exitNanos)
+					.put("peakRssKilobytes",  launch._peakRssKilobytes)
+					.put("score",             launch._result._score)
+					.put("succeeded",         launch._result.succeeded()));
+		}
+		summarize(launches, "default", results);
+		if (cdsArgs != null)
+			summarize(launches, "appcds", results);
+		return allSucceeded;
+	}
+
+	void summarize(List<Launch> launches, String config, ResultsSink results) {
+		Statistics first = new Statistics(), peak = new Statistics(), exit = new Statistics(), rss = new Statistics();
+		for (Launch launch: launches) {
+			if (!launch._config.equals(config))
+				continue;
+			if (launch._firstAttemptNanos >= 0) first.add(launch._firstAttemptNanos);
+			if (launch._peakNanos         >= 0) peak.add(launch._peakNanos);
+			if (launch._exitNanos         >= 0) exit.add(launch._exitNanos);
+			if (launch._peakRssKilobytes  >= 0) rss.add(launch._peakRssKilobytes);
+		}
+		out().println("  " + config + " mean"
+			+ "\t" + nanos(first)
+			+ "\t" + nanos(peak)
+			+ "\t" + nanos(exit)
+			+ "\t" + ((rss.count() == 0)? "-" : kilobytes((long)rss.mean())));
+		if (results != null)
+			results.write(new ResultsSink.Record("jvmStartup")
+				.put("benchmark",             _name)
+				.put("config",                config)
+				.put("launches",              first.count())
+				.put("meanFirstAttemptNanos", first.mean())
+				.put("meanPeakNanos",         peak.mean())
+				.put("meanExitNanos",         exit.mean())
+				.put("meanPeakRssKilobytes",  rss.mean()));
+	}
+
+	static String nanos(Statistics s) {
+		return (s.count() == 0)? "-" : nanos((long)s.mean());
+	}
+
+	static String nanos(long value) {
+		return (value < 0)? "-" : LatencyBench.nanos(value);
+	}
+
+	static String kilobytes(long value) {
+		return (value < 0)? "-" : (BumbleBench.pretty(value / 1024.0) + "MB");
+	}
+
+}
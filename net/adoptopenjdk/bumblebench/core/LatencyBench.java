@@ -0,0 +1,189 @@
+/*******************************************************************************
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*******************************************************************************/
+
+package net.adoptopenjdk.bumblebench.core;
+
+/**
+ * Base class for benchmarks that care about the latency of individual
+ * operations, not just their throughput.
+ * <p>
+ * Subclasses implement {@link #doOperation} instead of <tt>doBatch</tt>.
+ * Each batch times every operation (or every group of
+ * <tt>operationsPerSample</tt> operations, for operations too short to time
+ * individually) into a {@link LatencyHistogram}.  The score is still
+ * operations per second, found in the usual way, but each attempt also
+ * reports the median, 99th percentile and maximum latency, and the end of
+ * the run reports the latency distribution over the whole finale.
+ * <p>
+ * A benchmark whose <tt>doBatch</tt> is a loop around a single operation,
+ * like <tt>DigestBench</tt> or <tt>SocketEchoBench</tt>, ports by moving the
+ * loop body into <tt>doOperation</tt>.
+ * <p>
+ * <b>Open-loop mode.</b>  The normal search is closed-loop: each operation
+ * starts when the previous one finishes, so a slow operation delays the ones
+ * behind it without their latencies showing it ("coordinated omission").
+ * With option <tt>openLoop</tt>, the target score is instead an arrival rate
+ * in operations per second.  Operation <em>i</em> of a batch is scheduled to
+ * start at <tt>i/rate</tt> seconds, and its latency is measured from that
+ * intended start rather than from when it actually started, so queueing
+ * delay is included.  An attempt succeeds if the
+ * <tt>latencyTargetPercentile</tt> of its latencies is within
+ * <tt>latencyTargetNanos</tt>, so the score becomes the highest arrival rate
+ * that still meets that latency target.
+ */
+public abstract class LatencyBench extends MicroBench {
+
+	/** Performs the operation whose latency is being measured. */
+	protected abstract void doOperation() throws InterruptedException;
+
+	static final int OPERATIONS_PER_SAMPLE = Math.max(option("operationsPerSample", 1), 1);
+
+	static final double[] SUMMARY_PERCENTILES = { 50, 90, 99, 99.9 };
+
+	static final boolean OPEN_LOOP                 = option("openLoop", false);
+	static final double  LATENCY_TARGET_PERCENTILE = option("latencyTargetPercentile", 99.0);
+	static final long    LATENCY_TARGET_NANOS      = option("latencyTargetNanos", 1000000L);
+
+	// Waits shorter than this are spun rather than parked, because parking is too coarse
+	static final long    MAX_SPIN_NANOS            = option("maxSpinNanos", 100000L);
+
+	final LatencyHistogram _batchLatencies  = new LatencyHistogram();
+	final LatencyHistogram _finaleLatencies = new LatencyHistogram();
+
+	protected long doBatch(long numIterations) throws InterruptedException {
+		if (OPEN_LOOP)
+			return doOpenLoopBatch(numIterations);
+		LatencyHistogram latencies = _batchLatencies;
+		int operationsPerSample = OPERATIONS_PER_SAMPLE;
+		long numSamples = (numIterations + operationsPerSample - 1) / operationsPerSample;
+		latencies.reset();
+		for (long i = 0; i < numSamples; i++) {
+			long start = System.nanoTime();
+			for (int j = 0; j < operationsPerSample; j++)
+				doOperation();
+			long end = System.nanoTime();
+			latencies.record((end - start) / operationsPerSample);
+		}
+		if (phase().equals("finale"))
+			_finaleLatencies.add(latencies);
+		return numSamples * operationsPerSample;
+	}
+
+	// Set when an open-loop batch falls so far behind its schedule that it is abandoned
+	boolean _fellBehind;
+
+	/** Runs numIterations operations at evenly spaced intended start times
+	 * covering the batch target duration, so the arrival rate is the target
+	 * score, and records each latency from its intended start time.
+	 */
+	final long doOpenLoopBatch(long numIterations) throws InterruptedException {
+		LatencyHistogram latencies = _batchLatencies;
+		double intervalNanos = Options.BATCH_TARGET_DURATION * 1.0e+6 / numIterations;
+		long maxLagNanos = Options.BATCH_TARGET_DURATION * 1000000L;
+		latencies.reset();
+		_fellBehind = false;
+		long start = System.nanoTime();
+		long i;
+		for (i = 0; i < numIterations; i++) {
+			long intendedStart = start + (long)(i * intervalNanos);
+			long now = System.nanoTime();
+			if (now - intendedStart > maxLagNanos) {
+				// Hopelessly behind schedule; the latency target is surely missed
+				_fellBehind = true;
+				break;
+			}
+			while (intendedStart - now > 0) {
+				long wait = intendedStart - now;
+				if (wait > MAX_SPIN_NANOS)
+					java.util.concurrent.locks.LockSupport.parkNanos(wait - MAX_SPIN_NANOS);
+				now = System.nanoTime();
+			}
+			doOperation();
+			latencies.record(System.nanoTime() - intendedStart);
+		}
+		if (phase().equals("finale"))
+			_finaleLatencies.add(latencies);
+		return i;
+	}
+
+	float judgeBatch(float targetScore, float measuredRate) {
+		if (!OPEN_LOOP)
+			return measuredRate;
+		boolean metTarget = !_fellBehind && _batchLatencies.valueAtPercentile(LATENCY_TARGET_PERCENTILE) <= LATENCY_TARGET_NANOS;
+		return metTarget? UNSPECIFIED_SUCCESS : UNSPECIFIED_FAILURE;
+	}
+
+	public void run() {
+		if (OPEN_LOOP)
+			out().println("Open-loop mode: score is the highest arrival rate whose p" + percentileName(LATENCY_TARGET_PERCENTILE)
+				+ " latency is within " + nanos(LATENCY_TARGET_NANOS));
+		super.run();
+		reportLatencies(OPEN_LOOP? "finale, open loop" : "finale", _finaleLatencies);
+	}
+
+	final void reportLatencies(String label, LatencyHistogram latencies) {
+		if (latencies.count() == 0)
+			return;
+		StringBuilder sb = new StringBuilder("  latency (" + label + ", " + latencies.count() + " samples):");
+		for (double p: SUMMARY_PERCENTILES)
+			sb.append("  p").append(percentileName(p)).append(' ').append(nanos(latencies.valueAtPercentile(p)));
+		sb.append("  max ").append(nanos(latencies.max()));
+		out().println(sb);
+
+		if (_results != null) {
+			ResultsSink.Record record = new ResultsSink.Record("latency")
+				.put("benchmark", _name)
+				.put("phase",     "finale")
+				.put("openLoop",  OPEN_LOOP)
+				.put("samples",   latencies.count())
+				.put("operationsPerSample", (long)OPERATIONS_PER_SAMPLE);
+			for (double p: SUMMARY_PERCENTILES)
+				record.put("p" + percentileName(p) + "Nanos", latencies.valueAtPercentile(p));
+			record.put("maxNanos", latencies.max());
+			_results.write(record);
+		}
+	}
+
+	static String percentileName(double p) {
+		return (p == Math.rint(p))? Long.toString((long)p) : Double.toString(p).replace(".", "");
+	}
+
+	static String nanos(long value) {
+		if (value < 1000L)
+			return value + "ns";
+		else if (value < 1000000L)
+			return pretty(value / 1e3) + "us";
+		else if (value < 1000000000L)
+			return pretty(value / 1e6) + "ms";
+		else
+			return pretty(value / 1e9) + "s";
+	}
+
+	String extraReportHeader() { return super.extraReportHeader() + "\tp50\tp99\tmax"; }
+
+	String reportInfoAfterPaused() {
+		return super.reportInfoAfterPaused()
+			+ "\t" + nanos(_batchLatencies.valueAtPercentile(50))
+			+ "\t" + nanos(_batchLatencies.valueAtPercentile(99))
+			+ "\t" + nanos(_batchLatencies.max());
+	}
+
+	void addExtraResults(ResultsSink.Record record) {
+		super.addExtraResults(record);
+		record.put("p50Nanos", _batchLatencies.valueAtPercentile(50));
+		record.put("p99Nanos", _batchLatencies.valueAtPercentile(99));
+		record.put("maxNanos", _batchLatencies.max());
+	}
+
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*******************************************************************************/
+
+package net.adoptopenjdk.bumblebench.core;
+
+/**
+ * A fixed-size histogram of non-negative long values (typically nanoseconds)
+ * with logarithmically spaced buckets.
+ * <p>
+ * Each power of two is split into {@link #SUB_BUCKETS} linear buckets, so any
+ * recorded value is known to within about 3%, and values up to
+ * <tt>Long.MAX_VALUE</tt> fit in under 2000 counters.  {@link #record} does
+ * no allocation and no division, so it is cheap enough to call between the
+ * operations being timed.
+ */
+final class LatencyHistogram {
+
+	static final int SUB_BUCKET_BITS = 5;
+	static final int SUB_BUCKETS     = 1 << SUB_BUCKET_BITS;
+
+	private final long[] _counts = new long[SUB_BUCKETS + (64 - SUB_BUCKET_BITS) * SUB_BUCKETS];
+	private long _count;
+	private long _max;
+
+	void record(long value) {
+		if (value < 0)
+			value = 0;
+		_counts[indexOf(value)]++;
+		_count++;
+		if (value > _max)
+			_max = value;
+	}
+
+	void reset() {
+		java.util.Arrays.fill(_counts, 0L);
+		_count = 0;
+		_max = 0;
+	}
+
+	/** Adds all the values recorded in <tt>other</tt> to this histogram. */
+	void add(LatencyHistogram other) {
+		for (int i = 0; i < _counts.length; i++)
+			_counts[i] += other._counts[i];
+		_count += other._count;
+		_max = Math.max(_max, other._max);
+	}
+
+	long count() { return _count; }
+	long max()   { return _max;   }
+
+	/** Returns an upper bound on the value below which the given percentage (0 to 100) of the recorded values fall. */
+	long valueAtPercentile(double percentile) {
+		if (_count == 0)
+			return 0;
+		long rank = (long)Math.ceil(percentile / 100 * _count);
+		rank = Math.min(Math.max(rank, 1), _count);
+		long seen = 0;
+		for (int i = 0; i < _counts.length; i++) {
+			seen += _counts[i];
+			if (seen >= rank)
+				return Math.min(highestValueIn(i), _max);
+		}
+		return _max;
+	}
+
+	static int indexOf(long value) {
+		if (value < SUB_BUCKETS)
+			return (int)value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		int subBucket = (int)(value >>> shift) - SUB_BUCKETS;
+		return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+	}
+
+	static long highestValueIn(int index) {
+		if (index < SUB_BUCKETS)
+			return index;
+		int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+		long subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+		long lowest = (SUB_BUCKETS + subBucket) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+}
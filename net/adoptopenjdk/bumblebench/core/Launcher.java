@@ -14,13 +14,14 @@
 
 package net.adoptopenjdk.bumblebench.core;
 
+import java.io.File;
 import java.io.InputStream;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
 
 public class Launcher extends Util {
 
@@ -37,22 +38,77 @@ public class Launcher extends Util {
 		}
 		String[] packages = packagePath.split("[:;]");
 
+		String classPathEntry = System.getProperty("java.class.path").split(File.pathSeparator)[0];
+
+		if (Suite.isRequested(args)) {
+			if (Sweep.isRequested())
+				throw new Error("A parameter sweep runs a single benchmark, so it can't be combined with a suite");
+			Suite suite = new Suite(args);
+			List<String> names = suite.select(findBenchmarksIn(classPathEntry, packages));
+			if (names.isEmpty()) {
+				err().println("No benchmarks match the requested suite");
+				System.exit(1);
+			}
+			List<BenchmarkResult> results = suite.run(packages, names);
+			if (!Baseline.process(results))
+				System.exit(Baseline.REGRESSION_EXIT_STATUS);
+			System.exit(BenchmarkResult.allSucceeded(results)? 0 : 1);
+		}
+
 		if (args.length < 1) {
 			err().println("\n-= BumbleBench series " + BumbleBench.SERIES_NUMBER + " version " + BumbleBench.VERSION_NUMBER + "." + BumbleBench.REVISION_NUMBER + " =-\n");
-			listBenchmarksIn(System.getProperty("java.class.path").split(":")[0], packages);
+			listBenchmarksIn(classPathEntry, packages);
 			System.exit(1);
 		}
 
+		if (Sweep.isRequested() && !Fork.IS_CHILD) {
+			List<BenchmarkResult> results = new Sweep(args[0]).run(packages);
+			if (!Baseline.process(results))
+				System.exit(Baseline.REGRESSION_EXIT_STATUS);
+			System.exit(BenchmarkResult.allSucceeded(results)? 0 : 1);
+		}
+
+		if (Fork.FORKS >= 1 && !Fork.IS_CHILD) {
+			BenchmarkResult result = new Fork(args[0]).run();
+			if (!Baseline.process(Collections.singletonList(result)))
+				System.exit(Baseline.REGRESSION_EXIT_STATUS);
+			System.exit(result.succeeded()? 0 : 1);
+		}
+
+		if (JvmStartup.LAUNCHES >= 1 && !Fork.IS_CHILD)
+			System.exit(new JvmStartup(args[0]).runLaunches()? 0 : 1);
+
 		String testName = args[0].replace('.', '$');
 
+		Properties sweptValues = Sweep.sweptValues();
 		Class testClass = loadTestClass(packages, testName);
+		Sweep.keepSweptValues(sweptValues);
+		BumbleBench instance = runBenchmark(testClass);
+		if (JvmStartup.IS_STARTUP_CHILD)
+			JvmStartup.reportPeakRssToParent();
+		if (Fork.IS_CHILD)
+			Fork.reportToParent(instance);
+		else if (!Baseline.process(Collections.singletonList(BenchmarkResult.of(args[0], instance))))
+			System.exit(Baseline.REGRESSION_EXIT_STATUS);
+	}
+
+	/** Runs the given benchmark class the way the options ask for, and
+	 * returns the instance whose score was reported.
+	 */
+	static BumbleBench runBenchmark(Class testClass) throws Exception {
+		BumbleBench instance;
 		int numParallelInstances = option("parallelInstances", 0);
-		if (numParallelInstances >= 1)
-			runBumbleMainOn(ParallelBench.create(numParallelInstances, testClass));
+		String parallelSweep = option("parallelSweep", "");
+		if (!parallelSweep.isEmpty())
+			return ParallelBench.sweep(ParallelBench.parseThreadCounts(parallelSweep), testClass);
+		else if (numParallelInstances >= 1)
+			instance = ParallelBench.create(numParallelInstances, testClass);
 		else if (option("measureStartup", false))
-			runBumbleMainOn(StartupBench.create(testClass));
+			instance = StartupBench.create(testClass);
 		else
-			runBumbleMainOn((BumbleBench)testClass.newInstance());
+			instance = (BumbleBench)testClass.newInstance();
+		runBumbleMainOn(instance);
+		return instance;
 	}
 
 	static void runBumbleMainOn(BumbleBench instance) throws NoSuchMethodException, IllegalAccessException {
@@ -81,7 +137,18 @@ public class Launcher extends Util {
 		;
 
 	public static Class loadTestClass(String[] packageNames, String name) throws ClassNotFoundException, IOException {
-		ClassNotFoundException typicalException = null;
+		BenchmarkIndex index = BenchmarkIndex.load();
+		if (index != null) {
+			for (String packageName: packageNames) {
+				BenchmarkIndex.Entry entry = index.find(qualifiedClassName(packageName, name));
+				if (entry != null) {
+					if (entry._properties != null)
+						loadPropertiesFrom(entry._properties);
+					return Class.forName(qualifiedClassName(packageName, option("class", name)));
+				}
+			}
+			// Not in the index; maybe it's a benchmark from elsewhere on the class path
+		}
 		for (String packageName: packageNames) {
 			Class testClass = loadTestClass(packageName, name);
 			if (testClass != null)
@@ -139,26 +206,21 @@ public class Launcher extends Util {
 	}
 
 	static void listBenchmarksIn(String jarFileName, String[] packages) throws Exception {
-		ClassLoader loader = Launcher.class.getClassLoader();
-		ZipFile jarFile = new ZipFile(jarFileName);
-		int unsupportedClasses = 0;
-		for (java.util.Enumeration<?> enumeration = jarFile.entries(); enumeration.hasMoreElements(); ) {
-			ZipEntry entry = (ZipEntry) enumeration.nextElement();
-			String entryName = entry.getName();
-			if (entryName.endsWith(".class")) {
-				String className = entryName.substring(0, entryName.length()-6).replace('/','.');
-				try {
-					Class c = Class.forName(className, false, loader); // Testcase <clinit> can be expensive, so load without initializing
-					if (!Modifier.isAbstract(c.getModifiers()) && BumbleBench.class.isAssignableFrom(c))
-						System.out.println(nameFromPath(c.getCanonicalName(), packages));
-				} catch (UnsupportedClassVersionError e) {
-					unsupportedClasses += 1;
-				} catch (NoClassDefFoundError e) {}
-			}
-		}
-		if (unsupportedClasses >= 1) {
+		for (String name: findBenchmarksIn(jarFileName, packages))
+			System.out.println(name);
+	}
+
+	/** Returns the names of the runnable benchmarks in the given jar file or
+	 * class directory, in the form accepted on the command line.  Uses the
+	 * benchmark index if there is one, and scans for benchmarks otherwise.
+	 */
+	static List<String> findBenchmarksIn(String classPathEntry, String[] packages) throws Exception {
+		BenchmarkIndex index = BenchmarkIndex.load();
+		if (index == null)
+			index = new BenchmarkIndex(BenchmarkIndex.scan(classPathEntry));
+		if (index._unsupportedClasses >= 1)
 			err().println("NOTE: There are additional benchmarks available that cannot be run by your java version");
-		}
+		return index.names(packages);
 	}
 
 	static String nameFromPath(String name, String[] packages) {
@@ -25,6 +25,10 @@ public abstract class MicroBench extends BumbleBench {
 		static float   MIN_UNPAUSED_FACTOR    = 0.2F;
 		static float   MAX_TIME_DILATION      = 10F;
 		static boolean UNSPECIFIED_ESTIMATE   = false;
+		static boolean GC_ACCOUNTING          = false;
+		static boolean CPU_ACCOUNTING         = false;
+		static boolean SUBTRACT_TIMER_OVERHEAD = false;
+		static float   TIMER_OVERHEAD_WARNING = 0.1F;
 	}
 
 	public static class Options {
@@ -34,6 +38,14 @@ public abstract class MicroBench extends BumbleBench {
 		static final float   MIN_UNPAUSED_FACTOR    = option("minUnpausedFactor", Defaults.MIN_UNPAUSED_FACTOR);
 		static final float   MAX_TIME_DILATION      = option("maxTimeDilation", Defaults.MAX_TIME_DILATION);
 		static final boolean UNSPECIFIED_ESTIMATE   = option("unspecifiedEstimate", Defaults.UNSPECIFIED_ESTIMATE);
+		static final boolean GC_ACCOUNTING          = option("gcAccounting", Defaults.GC_ACCOUNTING);
+		static final boolean CPU_ACCOUNTING         = option("cpuAccounting", Defaults.CPU_ACCOUNTING);
+
+		// The cost of each pauseTimer/startTimer pair can be subtracted from
+		// the unpaused time, and a warning is printed when that cost exceeds
+		// this fraction of the unpaused time.
+		static final boolean SUBTRACT_TIMER_OVERHEAD = option("subtractTimerOverhead", Defaults.SUBTRACT_TIMER_OVERHEAD);
+		static final float   TIMER_OVERHEAD_WARNING  = option("timerOverheadWarning", Defaults.TIMER_OVERHEAD_WARNING);
 	}
 
 	public MicroBench() {
@@ -43,6 +55,25 @@ public abstract class MicroBench extends BumbleBench {
 
 	float _unpausedFraction = 1F;
 
+	// Per-batch GC and allocation accounting, with the results of the last batch
+	//
+	final GCMeter _gcMeter = Options.GC_ACCOUNTING? new GCMeter() : null;
+	float _bytesPerIteration = Float.NaN;
+	float _gcFraction;
+
+	// Per-batch CPU time and context switch accounting, with the results of the last batch
+	//
+	final CpuMeter _cpuMeter = Options.CPU_ACCOUNTING? new CpuMeter() : null;
+	float _cpuFraction = Float.NaN;
+	float _voluntarySwitchRate = Float.NaN, _involuntarySwitchRate = Float.NaN; // Per second
+
+	// The iterations and measured time behind the last batch's rate
+	long _batchIterations, _batchNanos;
+
+	// Estimated share of the last batch's unpaused time spent in the timer itself
+	float _timerOverheadFraction;
+	boolean _warnedAboutTimerOverhead;
+
 	protected abstract long doBatch(long numIterations) throws InterruptedException;
 
 	protected final float attempt(float targetScore) throws InterruptedException {
@@ -59,6 +90,29 @@ public abstract class MicroBench extends BumbleBench {
 		long targetIterations = (long)(iterationRate * Options.BATCH_TARGET_DURATION / 1000F); // This could saturate, but I'll worry about that when we get computers that can do MAX_LONG calculations per second
 		targetIterations = Math.max(targetIterations, 1);
 
+		float measuredRate = timeBatch(targetIterations, targetScore);
+
+		measuredRate = judgeBatch(targetScore, measuredRate);
+
+		if (Options.UNSPECIFIED_ESTIMATE)
+			measuredRate = (measuredRate >= targetScore)? UNSPECIFIED_SUCCESS : UNSPECIFIED_FAILURE;
+
+		return measuredRate;
+	}
+
+	/** Runs one batch of the given number of iterations, updates the
+	 * per-batch accounting, and returns the rate achieved in iterations per
+	 * second.  The iterations doBatch reported and the time they were
+	 * measured over are left in {@link #_batchIterations} and
+	 * {@link #_batchNanos}.
+	 */
+	final float timeBatch(long targetIterations, float targetScore) throws InterruptedException {
+		// The CPU meter reads /proc, which allocates, so it goes outside the GC meter
+		if (_cpuMeter != null)
+			_cpuMeter.start();
+		if (_gcMeter != null)
+			_gcMeter.start();
+
 		// The call to doBatch, wrapped as tightly as possible by System.nanoTime()
 		//
 		resetTimer();
@@ -66,13 +120,50 @@ public abstract class MicroBench extends BumbleBench {
 		long measuredIterations = doBatch(targetIterations);
 		long returnTime = System.nanoTime();
 
+		if (_gcMeter != null)
+			_gcMeter.stop();
+		if (_cpuMeter != null)
+			_cpuMeter.stop();
+
 		// Follow-up calculations.  Not time-critical.
 		// 
 		long stopTime = isTimerPaused()? _pauseStartTime : returnTime;
 		long elapsedTime = stopTime - startTime;
 		long unpausedTime = elapsedTime - _pauseTotalDuration;
 		long measuredDuration = Options.TARGET_INCLUDES_PAUSES? elapsedTime : unpausedTime;
-		float measuredRate = measuredIterations * 1.0e+9f / unpausedTime;
+		long measuredTime = unpausedTime;
+		long timerPairs = _timerPairs;
+		// Calibrating would warm up the timer before a warmup profile's cold start, so that mode goes without
+		if (timerPairs > 0 && !WARMUP_PROFILE) {
+			long timerOverhead = (long)(timerPairs * TimerCalibration.get()._pairNanos);
+			_timerOverheadFraction = (unpausedTime > 0)? Math.min((float)timerOverhead / unpausedTime, 1F) : 1F;
+			if (Options.SUBTRACT_TIMER_OVERHEAD && timerOverhead < unpausedTime)
+				measuredTime -= timerOverhead;
+			if (_timerOverheadFraction > Options.TIMER_OVERHEAD_WARNING && !_warnedAboutTimerOverhead) {
+				out().println("   -- WARNING: " + timerPairs + " pause/start pairs cost about " + percentage(_timerOverheadFraction).trim()
+					+ "% of the unpaused time; " + (Options.SUBTRACT_TIMER_OVERHEAD? "this is subtracted, so the score depends on the calibration" : "the score includes this cost; consider subtractTimerOverhead") + " --");
+				out().println("   -- timer calibration: " + TimerCalibration.get() + " --");
+				_warnedAboutTimerOverhead = true;
+			}
+		} else {
+			_timerOverheadFraction = 0F;
+		}
+		float measuredRate = measuredIterations * 1.0e+9f / measuredTime;
+		_batchIterations = measuredIterations;
+		_batchNanos      = measuredTime;
+
+		if (_gcMeter != null) {
+			long allocatedBytes = _gcMeter.allocatedBytes();
+			_bytesPerIteration = (allocatedBytes >= 0 && measuredIterations > 0)? (float)allocatedBytes / measuredIterations : Float.NaN;
+			_gcFraction = (elapsedTime > 0)? Math.min(_gcMeter.collectionMillis() * 1.0e+6f / elapsedTime, 1F) : 0F;
+		}
+		if (_cpuMeter != null) {
+			// Measured against the whole batch, including pauses, because that's when the thread was running
+			long batchTime = returnTime - startTime;
+			_cpuFraction           = (_cpuMeter.cpuNanos() >= 0 && batchTime > 0)? (float)_cpuMeter.cpuNanos() / batchTime : Float.NaN;
+			_voluntarySwitchRate   = (_cpuMeter.voluntarySwitches()   >= 0 && batchTime > 0)? _cpuMeter.voluntarySwitches()   * 1.0e+9f / batchTime : Float.NaN;
+			_involuntarySwitchRate = (_cpuMeter.involuntarySwitches() >= 0 && batchTime > 0)? _cpuMeter.involuntarySwitches() * 1.0e+9f / batchTime : Float.NaN;
+		}
 
 		// Update _unpausedFraction for next time
 		if (elapsedTime > 0) {
@@ -87,6 +178,8 @@ public abstract class MicroBench extends BumbleBench {
 			out().println(
 				  " elapsedTime=" + elapsedTime
 				+ " unpausedTime=" + unpausedTime
+				+ " timerPairs=" + timerPairs
+				+ " measuredTime=" + measuredTime
 				+ " targetIterations=" + targetIterations
 				+ " measuredIterations=" + measuredIterations
 				+ " measuredDuration=" + measuredDuration
@@ -95,15 +188,28 @@ public abstract class MicroBench extends BumbleBench {
 				);
 		}
 
-		if (Options.UNSPECIFIED_ESTIMATE)
-			measuredRate = (measuredRate >= targetScore)? UNSPECIFIED_SUCCESS : UNSPECIFIED_FAILURE;
+		return measuredRate;
+	}
 
+	/** Returns the value that attempt should return for a batch that achieved
+	 * the given rate.  By default this is just the rate itself; subclasses
+	 * that judge success some other way can override it to return
+	 * {@link #UNSPECIFIED_SUCCESS}, {@link #UNSPECIFIED_FAILURE} or their own estimate.
+	 */
+	float judgeBatch(float targetScore, float measuredRate) {
 		return measuredRate;
 	}
 
 	static final int LONG_BATCH_SECONDS = option("longBatchSeconds", 0);
 
+	static final boolean WARMUP_PROFILE = option("warmupProfile", false);
+
 	public void run() {
+		if (WARMUP_PROFILE) {
+			// Fixed-size batches from a cold start instead of the search; see WarmupProfile
+			new WarmupProfile(this).run();
+			return;
+		}
 		super.run();
 		if (LONG_BATCH_SECONDS > 0) {
 			out().println("\n   -- LONG BATCH --");
@@ -125,19 +231,70 @@ public abstract class MicroBench extends BumbleBench {
 	}
 
 	int watchdogSeconds() {
-		long expectedSeconds = MAX_WARMUP_SECONDS + BALLPARK_ITERATIONS*2 * Options.BATCH_TARGET_DURATION / 1000;
+		int expectedAttempts = CONFIDENCE_STOPPING_RULE? CONFIDENCE_MAX_ITERATIONS : BALLPARK_ITERATIONS*2;
+		long expectedSeconds = MAX_WARMUP_SECONDS + expectedAttempts * Options.BATCH_TARGET_DURATION / 1000;
 		return option("defaultWatchdogSeconds", (int)(2*expectedSeconds));
 	}
 
-	String extraReportHeader() { return super.extraReportHeader() + "\t%paused"; }
+	String extraReportHeader() {
+		String result = super.extraReportHeader() + "\t%paused";
+		if (_gcMeter != null)
+			result = result + "\tB/iter\t%gc";
+		if (_cpuMeter != null)
+			result = result + "\t%cpu\tvcsw/s\tivcsw/s";
+		return result;
+	}
+
 	String extraReportInfo() {
 		String result = super.extraReportInfo();
 		float pausedFraction = 1F - _unpausedFraction;
-		if (pausedFraction > 0F)
+		String following = reportInfoAfterPaused();
+		// Leave %paused blank when nothing is paused, unless more columns follow it
+		if (pausedFraction > 0F || !following.equals(""))
 			result = result + "\t" + percentage(pausedFraction);
+		return result + following;
+	}
+
+	/** The columns reported after %paused.  Subclasses add columns by
+	 * overriding this rather than extraReportInfo, so that %paused stays
+	 * aligned with its header.
+	 */
+	String reportInfoAfterPaused() {
+		String result = "";
+		if (_gcMeter != null)
+			result = result + "\t" + pretty(_bytesPerIteration) + "\t" + percentage(_gcFraction);
+		if (_cpuMeter != null)
+			result = result + "\t" + percentage(_cpuFraction) + "\t" + rate(_voluntarySwitchRate) + "\t" + rate(_involuntarySwitchRate);
 		return result;
 	}
 
+	private static String rate(float value) {
+		return Float.isNaN(value)? "--" : pretty(value);
+	}
+
+	void addExtraResults(ResultsSink.Record record) {
+		super.addExtraResults(record);
+		record.put("pausedFraction", 1F - _unpausedFraction);
+		if (_timerPairs > 0) {
+			record.put("timerPairs",            _timerPairs);
+			record.put("timerOverheadFraction", _timerOverheadFraction);
+		}
+		if (_gcMeter != null) {
+			record.put("bytesPerIteration", _bytesPerIteration);
+			record.put("gcCount",           _gcMeter.collections());
+			record.put("gcMillis",          _gcMeter.collectionMillis());
+			record.put("gcFraction",        _gcFraction);
+		}
+		if (_cpuMeter != null) {
+			record.put("cpuNanos",              _cpuMeter.cpuNanos());
+			record.put("cpuFraction",           _cpuFraction);
+			record.put("voluntarySwitches",     _cpuMeter.voluntarySwitches());
+			record.put("involuntarySwitches",   _cpuMeter.involuntarySwitches());
+			record.put("voluntarySwitchRate",   _voluntarySwitchRate);
+			record.put("involuntarySwitchRate", _involuntarySwitchRate);
+		}
+	}
+
 	//
 	// Pause/resume functionality
 	// Note that both pause and resume are designed to be idempotent.  For
@@ -148,36 +305,54 @@ public abstract class MicroBench extends BumbleBench {
 	static final boolean VERBOSE_PAUSE = option("verbosePause", false);
 
 	private long _pauseStartTime, _pauseTotalDuration;
+	private long _timerPairs;  // Number of times the timer was started after a pause
 	private boolean _isTimerPaused;
 
 	protected final boolean isTimerPaused(){ return _isTimerPaused; }
 
 	protected final long startTimer() {
+		boolean wasPaused = isTimerPaused();
+		long startTime = startTimerQuietly();
+		if (VERBOSE_PAUSE && wasPaused)
+			out().println("- started at " + startTime + ": " + _pauseTotalDuration + "ms total pause duration -");
+		return startTime;
+	}
+
+	protected final long pauseTimer() {
+		boolean wasPaused = isTimerPaused();
+		long now = pauseTimerQuietly();
+		if (VERBOSE_PAUSE && !wasPaused)
+			out().println("- paused  at " + _pauseStartTime + " -");
+		return now;
+	}
+
+	// The timer without verbosePause output, which TimerCalibration measures
+	//
+	final long startTimerQuietly() {
 		long startTime = System.nanoTime();
 		if (isTimerPaused()) {
 			_pauseTotalDuration += startTime - _pauseStartTime;
-			if (VERBOSE_PAUSE)
-				out().println("- started at " + startTime + ": " + _pauseTotalDuration + "ms total pause duration -");
+			_timerPairs++;
 		}
 		_isTimerPaused = false;
 		return startTime;
 	}
 
-	protected final long pauseTimer() {
+	final long pauseTimerQuietly() {
 		long now = System.nanoTime();
 		if (!isTimerPaused()) {
 			_pauseStartTime = now;
 			_isTimerPaused = true;
-			if (VERBOSE_PAUSE)
-				out().println("- paused  at " + _pauseStartTime + " -");
 		}
 		return now;
 	}
 
 	final void resetTimer() {
-		_pauseStartTime = _pauseTotalDuration = 0;
+		_pauseStartTime = _pauseTotalDuration = _timerPairs = 0;
 		_isTimerPaused = false;
 	}
 
+	final long pauseTotalDuration() { return _pauseTotalDuration; }
+
 }
 
@@ -19,7 +19,7 @@ public abstract class MiniBench extends MicroBench {
 	protected abstract int maxIterationsPerLoop();
 	protected abstract long doBatch(long numLoops, int numIterationsPerLoop) throws InterruptedException;
 
-	static final boolean CALL_SYSTEM_GC = option("callSystemGC", true);
+	static final boolean CALL_SYSTEM_GC = option("callSystemGC", !AllocationAntagonist.ENABLED); // A full GC per batch would hide the antagonist
 	static final boolean START_PAUSED   = option("startPaused", true); // Extremely fast workloads could become dominated by timer pause/start overhead
 	static final boolean MAX_ITERATIONS_PER_LOOP_THRESHOLD_MODE = option("maxIterationsPerLoopThresholdMode", true);
 	static final int MAX_ITERATIONS_PER_LOOP_THRESHOLD_FACTOR = option("maxIterationsPerLoopThresholdFactor", 2); // Must be >= 1. Increasing this factor lowers the threshold.
@@ -49,8 +49,12 @@ public abstract class MiniBench extends MicroBench {
 			numIterationsPerLoop = (int)(numIterations / numLoops);
 		}
 
-		if (CALL_SYSTEM_GC)
+		if (CALL_SYSTEM_GC) {
 			System.gc();
+			// Don't charge the explicit GC to the batch
+			if (_gcMeter != null)
+				_gcMeter.start();
+		}
 		if (VERBOSE)
 			out().println(this.getClass().getSimpleName() + ".doBatch(" + numLoops + ", " + numIterationsPerLoop + ") // " + numLoops*numIterationsPerLoop + " total iterations");
 
@@ -14,30 +14,74 @@
 
 package net.adoptopenjdk.bumblebench.core;
 
+import java.util.concurrent.Phaser;
+
+/**
+ * Runs several instances of a benchmark at once, one per worker thread, and
+ * aggregates their scores.
+ * <p>
+ * Each attempt is coordinated with a {@link Phaser} in two phases.  In the
+ * start phase, every worker waits until the target has been published and
+ * all the others are ready, so they are released together; in the finish
+ * phase, the main thread waits until every worker has stored its score.
+ * Alongside the aggregated score, each attempt reports the imbalance between
+ * workers (fastest score over slowest) and, with
+ * <tt>reportWorkerScores</tt>, the individual worker scores.
+ * <p>
+ * Option <tt>parallelSweep</tt>, a comma-separated list of thread counts such
+ * as <tt>1,2,4,8</tt>, runs the benchmark once at each count and prints a
+ * scaling table comparing them with the single-thread run.
+ * <p>
+ * Option <tt>virtualThreads</tt> runs the workers on virtual threads (Java
+ * 21 or later).  <tt>parallelInstances</tt> can then be far larger than the
+ * number of carrier threads.  Each attempt reports how busy the carriers
+ * were, and the end of the run reports how often a virtual thread was
+ * pinned to its carrier.
+ */
 public final class ParallelBench extends BumbleBench {
 
-	final WorkerThread[] _workerThreads;
+	final Worker[] _workers;
+	final Thread[] _workerThreads;
+
+	final Phaser  _phaser;
+	final float[] _workerScores;
+	float _instanceTargetScore;          // Published to the workers by the start phase
+	volatile boolean   _stopping;
+	volatile Throwable _failure;
 
 	public enum Style { MIN, AVERAGE, SUM };
 
 	final Style AGGREGATION_STYLE = Style.valueOf(option("aggregationStyle", "AVERAGE"));
 
+	static final boolean REPORT_WORKER_SCORES = option("reportWorkerScores", false);
+	static final boolean VIRTUAL_THREADS      = option("virtualThreads", false);
+
+	VirtualThreads.CarrierMonitor _carriers;  // Null unless VIRTUAL_THREADS
+	VirtualThreads.PinningCounter _pinning;   // Null unless VIRTUAL_THREADS
+	float _carrierUtilisation = Float.NaN;
+
 	protected float attempt(float targetScore) throws InterruptedException {
-		Float instanceTargetScore = (AGGREGATION_STYLE == Style.SUM)? (targetScore / _workerThreads.length) : targetScore;
-		for (WorkerThread w: _workerThreads)
-			w._workload._targetScores.put(instanceTargetScore);
+		_instanceTargetScore = (AGGREGATION_STYLE == Style.SUM)? (targetScore / _workers.length) : targetScore;
+		if (_carriers != null)
+			_carriers.sample();
+		_phaser.awaitAdvanceInterruptibly(_phaser.arrive()); // Start
+		_phaser.awaitAdvanceInterruptibly(_phaser.arrive()); // Finish
+		if (_carriers != null)
+			_carrierUtilisation = _carriers.sample();
+		if (_failure != null)
+			throw new RuntimeException("Parallel worker failed", _failure);
 		switch (AGGREGATION_STYLE) {
 			case MIN:
 				float worstScore = Float.POSITIVE_INFINITY;
-				for (WorkerThread w: _workerThreads)
-					worstScore = Math.min(worstScore, w._workload._resultScores.take());
+				for (float score: _workerScores)
+					worstScore = Math.min(worstScore, score);
 				return worstScore;
 			case AVERAGE:
 			case SUM:
 				float sum = 0F;
-				for (WorkerThread w: _workerThreads)
-					sum += w._workload._resultScores.take();
-				return (AGGREGATION_STYLE == Style.SUM)? sum : (sum / _workerThreads.length);
+				for (float score: _workerScores)
+					sum += score;
+				return (AGGREGATION_STYLE == Style.SUM)? sum : (sum / _workers.length);
 		}
 		throw new RuntimeException("Unexpected aggregation style " + AGGREGATION_STYLE);
 	}
@@ -48,17 +92,18 @@ public final class ParallelBench extends BumbleBench {
 
 	protected ParallelBench(int numThreads, BumbleBench instance0) {
 		super(instance0._name);
-		instance0.makeWorker(1);
-		WorkerThread[] workerThreads = new WorkerThread[numThreads];
-		workerThreads[0] = new WorkerThread(instance0);
+		Worker[] workers = new Worker[numThreads];
+		workers[0] = new Worker(instance0, 0);
 
 		Class class0 = instance0.getClass();
-		for (int i = 1; i < workerThreads.length; i++) {
+		for (int i = 1; i < workers.length; i++) {
 			BumbleBench workerInstance = (BumbleBench)newInstanceOfPossiblyFreshlyLoadedClass(class0, CLASS_PER_INSTANCE);
-			workerInstance.makeWorker(1);
-			workerThreads[i] = new WorkerThread(workerInstance);
+			workers[i] = new Worker(workerInstance, i);
 		}
-		_workerThreads = workerThreads;
+		_workers       = workers;
+		_workerThreads = new Thread[numThreads];
+		_workerScores  = new float[numThreads];
+		_phaser        = new Phaser(numThreads + 1); // The workers plus the thread calling attempt
 	}
 
 	/** Set classPerInstance if your benchmark has mutable static data.  This
@@ -78,24 +123,205 @@ public final class ParallelBench extends BumbleBench {
 	 */
 	final static boolean CLASS_PER_INSTANCE = option("classPerInstance", false);
 
+	/** One benchmark instance and the loop that runs its attempts on a worker thread. */
+	final class Worker implements Runnable {
+		final BumbleBench _workload;
+		final int _index;
+
+		Worker(BumbleBench workload, int index) {
+			_workload = workload;
+			_index    = index;
+			workload._parallelWorker = this;
+		}
+
+		public void run() {
+			try {
+				Launcher.runBumbleMainOn(_workload);
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		/** Called from the workload's bumbleMain. */
+		void runAttempts() {
+			Phaser phaser = _phaser;
+			try {
+				while (true) {
+					phaser.arriveAndAwaitAdvance(); // Start
+					if (_stopping)
+						break;
+					_workerScores[_index] = _workload.attempt(_instanceTargetScore);
+					phaser.arriveAndAwaitAdvance(); // Finish
+				}
+			} catch (Throwable t) {
+				_failure = t;
+			}
+			// Stop counting this worker so nobody waits for it any more
+			phaser.arriveAndDeregister();
+		}
+	}
+
+	Thread newWorkerThread(Worker worker) {
+		String name = _name + " worker " + worker._index;
+		if (VIRTUAL_THREADS)
+			return VirtualThreads.newThread(worker, name);
+		else
+			return new Thread(worker, name);
+	}
+
 	void startWorkers() {
+		if (VIRTUAL_THREADS) {
+			_carriers = new VirtualThreads.CarrierMonitor();
+			_pinning  = new VirtualThreads.PinningCounter();
+		}
 		// Start the workers after the constructor is finished so we can be sure
 		// the final fields will be visible to the worker threads.
-		for (WorkerThread w: _workerThreads)
-			w.start();
+		for (int i = 0; i < _workers.length; i++) {
+			_workerThreads[i] = newWorkerThread(_workers[i]);
+			_workerThreads[i].start();
+		}
 	}
 
 	void stopWorkers() throws InterruptedException {
-		for (WorkerThread w: _workerThreads)
-			w.interrupt();
-		for (WorkerThread w: _workerThreads)
-			w.join();
+		// Release the workers from the start phase with nothing to do
+		_stopping = true;
+		_phaser.arriveAndDeregister();
+		for (Thread t: _workerThreads)
+			t.join();
 	}
 
 	public void bumbleMain() throws Exception {
 		startWorkers();
-		super.bumbleMain();
-		stopWorkers();
+		try {
+			super.bumbleMain();
+		} finally {
+			stopWorkers();
+			if (_pinning != null)
+				reportVirtualThreads();
+		}
 	}
-}
 
+	void reportVirtualThreads() {
+		_pinning.close();
+		String pinned = _pinning.available()? Long.toString(_pinning.count()) : "unknown";
+		out().println("  virtual threads: " + _workers.length + " workers on " + _carriers.parallelism() + " carriers, pinned " + pinned + " times");
+		if (_results != null)
+			_results.write(new ResultsSink.Record("virtualThreads")
+				.put("benchmark", _name)
+				.put("workers",   (long)_workers.length)
+				.put("carriers",  (long)_carriers.parallelism())
+				.put("pinned",    _pinning.available()? _pinning.count() : -1L));
+	}
+
+	/*
+	 * Thread-count sweeps
+	 */
+
+	static int[] parseThreadCounts(String list) {
+		String[] parts = list.split(",");
+		int[] counts = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			try {
+				counts[i] = Integer.parseInt(parts[i].trim());
+			} catch (NumberFormatException e) {
+				counts[i] = 0;
+			}
+			if (counts[i] < 1)
+				throw new Error("Unrecognized thread count in parallelSweep: \"" + parts[i] + "\"");
+		}
+		return counts;
+	}
+
+	/** Runs the benchmark in a ParallelBench with each of the given thread
+	 * counts in turn, prints the scaling table, and returns the last instance.
+	 */
+	static ParallelBench sweep(int[] threadCounts, Class class0) throws Exception {
+		ParallelBench[] runs = new ParallelBench[threadCounts.length];
+		for (int i = 0; i < threadCounts.length; i++) {
+			out().println("\n-= Parallel sweep: " + threadCounts[i] + " threads =-");
+			runs[i] = create(threadCounts[i], class0);
+			Launcher.runBumbleMainOn(runs[i]);
+		}
+		reportSweep(runs);
+		return runs[runs.length-1];
+	}
+
+	/** Score of one worker thread, whatever the aggregation style. */
+	final float perThreadScore() {
+		return (AGGREGATION_STYLE == Style.SUM)? (finalScore() / _workers.length) : finalScore();
+	}
+
+	static void reportSweep(ParallelBench[] runs) {
+		// Speedup is relative to the single-thread run, or failing that, to
+		// the per-thread score of the run with the fewest threads.
+		ParallelBench base = runs[0];
+		for (ParallelBench run: runs)
+			if (run._workers.length < base._workers.length)
+				base = run;
+		float singleThreadScore = base.perThreadScore();
+
+		out().println("\n-= " + base._name + " parallel sweep (" + base.AGGREGATION_STYLE + " aggregation) =-\n");
+		if (base._workers.length != 1)
+			out().println("  NOTE: no single-thread run; speedup is relative to " + base._workers.length + " threads' per-thread score\n");
+		String format = "  %7s  %12s  %12s  %8s  %10s  %7s";
+		out().println(String.format(format, "Threads", "Score", "Per-thread", "Speedup", "Efficiency", "Uncert%"));
+		for (ParallelBench run: runs) {
+			int threads = run._workers.length;
+			float perThread = run.perThreadScore();
+			float speedup = perThread * threads / singleThreadScore;
+			out().println(String.format(format, threads,
+				score(run.finalScore()), score(perThread),
+				String.format("%.2f", speedup), percentage(speedup / threads).trim() + "%",
+				percentage(run.finalUncertainty())));
+			if (run._results != null)
+				run._results.write(new ResultsSink.Record("scaling")
+					.put("benchmark",      run._name)
+					.put("threads",        (long)threads)
+					.put("aggregation",    run.AGGREGATION_STYLE.toString())
+					.put("score",          run.finalScore())
+					.put("perThreadScore", perThread)
+					.put("speedup",        speedup)
+					.put("efficiency",     speedup / threads)
+					.put("uncertainty",    run.finalUncertainty()));
+		}
+	}
+
+	/** The ratio of the best worker score to the worst in the latest attempt, or NaN if not meaningful. */
+	final float imbalance() {
+		float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+		for (float score: _workerScores) {
+			min = Math.min(min, score);
+			max = Math.max(max, score);
+		}
+		if (min > 0F && !Float.isInfinite(max))
+			return max / min;
+		else
+			return Float.NaN;
+	}
+
+	String extraReportHeader() {
+		return "\tImbal" + (VIRTUAL_THREADS? "\t%carrier" : "") + (REPORT_WORKER_SCORES? "\tWorkers" : "");
+	}
+
+	String extraReportInfo() {
+		float imbalance = imbalance();
+		StringBuilder sb = new StringBuilder("\t");
+		sb.append(Float.isNaN(imbalance)? "--" : pretty(imbalance));
+		if (VIRTUAL_THREADS)
+			sb.append('\t').append(Float.isNaN(_carrierUtilisation)? "--" : percentage(_carrierUtilisation));
+		if (REPORT_WORKER_SCORES)
+			for (float score: _workerScores)
+				sb.append('\t').append(pretty(score));
+		return sb.toString();
+	}
+
+	void addExtraResults(ResultsSink.Record record) {
+		StringBuilder scores = new StringBuilder();
+		for (float score: _workerScores)
+			scores.append((scores.length() == 0)? "" : ",").append(score);
+		record.put("imbalance",    imbalance());
+		record.put("workerScores", scores.toString());
+		if (VIRTUAL_THREADS)
+			record.put("carrierUtilisation", _carrierUtilisation);
+	}
+}
@@ -0,0 +1,197 @@
+/*******************************************************************************
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*******************************************************************************/
+
+package net.adoptopenjdk.bumblebench.core;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Machine-readable record of a BumbleBench run.
+ * <p>
+ * The human-readable output of {@link BumbleBench#report} is meant for people
+ * and may change format at any time.  When option <tt>resultsFile</tt> is set,
+ * every attempt and the final score are also written to that file as one
+ * record per line, so tools can consume them without scraping stdout.
+ * <p>
+ * Two formats are supported, chosen with option <tt>resultsFormat</tt> or
+ * inferred from the file extension:
+ * <ul>
+ * <li><tt>jsonl</tt>: one JSON object per line.  Non-finite numbers are written as <tt>null</tt>.
+ * <li><tt>csv</tt>: comma-separated values whose first column is the record kind.
+ *     A header line (also starting with <tt>kind</tt>) is written whenever the
+ *     columns for a kind differ from the last header written for that kind.
+ * </ul>
+ * The file is opened in append mode so that several runs can accumulate in one file.
+ */
+abstract class ResultsSink extends Util {
+
+	static final String RESULTS_FILE   = option("resultsFile", "");
+	static final String RESULTS_FORMAT = option("resultsFormat", "");
+
+	private static ResultsSink _instance;
+	private static boolean _initialized;
+
+	/** Returns the sink selected by the options, or null if none was requested. */
+	static synchronized ResultsSink instance() {
+		if (!_initialized) {
+			_initialized = true;
+			if (!RESULTS_FILE.equals(""))
+				_instance = open(RESULTS_FILE, RESULTS_FORMAT);
+		}
+		return _instance;
+	}
+
+	static ResultsSink open(String fileName, String format) {
+		if (format.equals(""))
+			format = fileName.toLowerCase().endsWith(".csv")? "csv" : "jsonl";
+		PrintWriter writer;
+		try {
+			writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(fileName, true), "UTF-8"));
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to open results file \"" + fileName + "\"", e);
+		}
+		if (format.equals("jsonl") || format.equals("json"))
+			return new JsonLines(writer);
+		else if (format.equals("csv"))
+			return new Csv(writer);
+		else
+			throw new Error("Unrecognized resultsFormat: \"" + format + "\"");
+	}
+
+	final PrintWriter _writer;
+
+	ResultsSink(PrintWriter writer) {
+		_writer = writer;
+	}
+
+	/** Writes one record.  Each record is flushed immediately so that nothing
+	 * is lost if the run is cut short, for example by the watchdog.
+	 */
+	final synchronized void write(Record record) {
+		writeRecord(record);
+		_writer.flush();
+	}
+
+	abstract void writeRecord(Record record);
+
+	/** An ordered set of named values making up one line of the results file. */
+	static final class Record {
+		final String _kind;
+		final LinkedHashMap<String, Object> _values = new LinkedHashMap<String, Object>();
+
+		Record(String kind) { _kind = kind; }
+
+		Record put(String key, float value)   { _values.put(key, Float.valueOf(value));  return this; }
+		Record put(String key, double value)  { _values.put(key, Double.valueOf(value)); return this; }
+		Record put(String key, long value)    { _values.put(key, Long.valueOf(value));   return this; }
+		Record put(String key, boolean value) { _values.put(key, Boolean.valueOf(value)); return this; }
+		Record put(String key, String value)  { _values.put(key, value); return this; }
+	}
+
+	static final class JsonLines extends ResultsSink {
+
+		JsonLines(PrintWriter writer) { super(writer); }
+
+		void writeRecord(Record record) {
+			StringBuilder sb = new StringBuilder();
+			sb.append("{\"kind\":");
+			appendString(sb, record._kind);
+			for (Map.Entry<String, Object> entry: record._values.entrySet()) {
+				sb.append(',');
+				appendString(sb, entry.getKey());
+				sb.append(':');
+				appendValue(sb, entry.getValue());
+			}
+			sb.append('}');
+			_writer.println(sb);
+		}
+
+		static void appendValue(StringBuilder sb, Object value) {
+			if (value == null) {
+				sb.append("null");
+			} else if (value instanceof Float || value instanceof Double) {
+				double d = ((Number)value).doubleValue();
+				if (Double.isNaN(d) || Double.isInfinite(d))
+					sb.append("null");
+				else
+					sb.append(value);
+			} else if (value instanceof Long || value instanceof Boolean) {
+				sb.append(value);
+			} else {
+				appendString(sb, value.toString());
+			}
+		}
+
+		static void appendString(StringBuilder sb, String s) {
+			sb.append('"');
+			for (int i = 0; i < s.length(); i++) {
+				char c = s.charAt(i);
+				switch (c) {
+					case '"':  sb.append("\\\""); break;
+					case '\\': sb.append("\\\\"); break;
+					case '\n': sb.append("\\n");  break;
+					case '\r': sb.append("\\r");  break;
+					case '\t': sb.append("\\t");  break;
+					default:
+						if (c < 0x20)
+							sb.append(String.format("\\u%04x", (int)c));
+						else
+							sb.append(c);
+				}
+			}
+			sb.append('"');
+		}
+	}
+
+	static final class Csv extends ResultsSink {
+
+		final HashMap<String, List<String>> _headers = new HashMap<String, List<String>>();
+
+		Csv(PrintWriter writer) { super(writer); }
+
+		void writeRecord(Record record) {
+			List<String> columns = new ArrayList<String>(record._values.keySet());
+			if (!columns.equals(_headers.get(record._kind))) {
+				_headers.put(record._kind, columns);
+				StringBuilder header = new StringBuilder("kind");
+				for (String column: columns)
+					header.append(',').append(quoted(column));
+				_writer.println(header);
+			}
+			StringBuilder sb = new StringBuilder(quoted(record._kind));
+			for (Object value: record._values.values()) {
+				sb.append(',');
+				if (value != null)
+					sb.append(quoted(value.toString()));
+			}
+			_writer.println(sb);
+		}
+
+		static String quoted(String s) {
+			if (s.indexOf(',') == -1 && s.indexOf('"') == -1 && s.indexOf('\n') == -1)
+				return s;
+			else
+				return '"' + s.replace("\"", "\"\"") + '"';
+		}
+	}
+
+}
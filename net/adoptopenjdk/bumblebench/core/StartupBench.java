@@ -14,19 +14,62 @@
 
 package net.adoptopenjdk.bumblebench.core;
 
+import java.lang.reflect.Constructor;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Measures the startup of a benchmark: each iteration loads the workload
+ * class afresh and runs <tt>batchesPerClass</tt> attempts on a new instance.
+ * The score counts only the time spent in <tt>bumbleMain</tt>, as it always
+ * has, but each iteration also times the phases of the instance's startup:
+ * <ul>
+ * <li><b>define</b>: <tt>OneOffLoader.defineClass</tt> parsing the class file
+ * <li><b>link</b>: linking and verification, forced by reflecting on the
+ *     constructor (HotSpot links a class before reflecting on its members;
+ *     other JVMs may leave some of this work to the init phase)
+ * <li><b>init</b>: the static initializer and the constructor
+ * <li><b>first</b>: the first attempt
+ * <li><b>steady</b>: from the start of define to the end of the first attempt
+ *     within <tt>steadyStateTolerance</tt> of the steady-state attempt time,
+ *     which is the median of the last half of the attempts
+ * </ul>
+ * Each attempt reports the median of each phase over its batch, and the
+ * end of the run reports the distribution of each phase over the finale.
+ */
 public final class StartupBench extends MicroBench {
 
 	protected final long doBatch(long numIterations) throws InterruptedException {
 		verbose("Starting " + numIterations + " iterations");
+		for (LatencyHistogram h: _batchPhases)
+			h.reset();
+		String name = _workloadClass.getName();
 		for (long i = 0; i < numIterations; i++) {
-			// Program a worker to do a series of batches and then stop
+			// Load, link and initialize a fresh copy of the workload class
+			long start = System.nanoTime();
+			BumbleBench workerInstance;
+			long defined, linked, initialized;
+			try {
+				Class<?> c = new OneOffLoader(name, _classBytes, _workloadClass.getClassLoader()).loadClass(name);
+				defined = System.nanoTime();
+				Constructor<?> constructor = c.getConstructor();
+				linked = System.nanoTime();
+				Class.forName(name, true, c.getClassLoader());
+				workerInstance = (BumbleBench)constructor.newInstance();
+				initialized = System.nanoTime();
+			} catch (ReflectiveOperationException e) {
+				throw new RuntimeException(e);
+			}
+
+			// Program the worker to do a series of batches and then stop
 			reallyVerbose("Create worker to do " + BATCHES_PER_CLASS + " batches of " + ITERATIONS_PER_BATCH);
-			BumbleBench workerInstance = (BumbleBench)newInstanceOfFreshlyLoadedClass(_workloadClass);
-			workerInstance.makeWorker(BATCHES_PER_CLASS+1);
+			TimestampedQueue targetScores = new TimestampedQueue(BATCHES_PER_CLASS+1);
+			TimestampedQueue resultScores = new TimestampedQueue(BATCHES_PER_CLASS+1);
+			workerInstance._targetScores = targetScores;
+			workerInstance._resultScores = resultScores;
 			float target = (float)ITERATIONS_PER_BATCH;
 			for (int batch = 0; batch < BATCHES_PER_CLASS; batch++)
-				workerInstance._targetScores.put(target);
-			workerInstance._targetScores.put(Float.NaN);
+				targetScores.put(target);
+			targetScores.put(Float.NaN);
 
 			// Run the worker
 			startTimer();
@@ -43,33 +86,152 @@ public final class StartupBench extends MicroBench {
 			float resultTotal = 0F;
 			for (int batch = 0; batch < BATCHES_PER_CLASS; batch++)
 				{
-				float result = (float)workerInstance._resultScores.take();
+				float result = (float)resultScores.take();
 				reallyVerbose("  Batch " + batch + " result " + result);
 				resultTotal += result;
 				}
 
 			reallyVerbose("Worker did " + resultTotal + " iterations");
+			recordPhases(start, defined, linked, initialized, targetScores._takeNanos, resultScores._putNanos);
 		}
+		if (phase().equals("finale"))
+			for (int p = 0; p < PHASES.length; p++)
+				_finalePhases[p].add(_batchPhases[p]);
 		verbose("Finished " + numIterations + " iterations");
 		return numIterations;
 	}
 
+	void recordPhases(long start, long defined, long linked, long initialized, long[] attemptStarts, long[] attemptEnds) {
+		int attempts = BATCHES_PER_CLASS;
+		long[] durations = new long[attempts];
+		for (int a = 0; a < attempts; a++)
+			durations[a] = attemptEnds[a] - attemptStarts[a];
+		long[] lastHalf = java.util.Arrays.copyOfRange(durations, attempts / 2, attempts);
+		java.util.Arrays.sort(lastHalf);
+		long steadyDuration = lastHalf[lastHalf.length / 2];
+		int steadyAttempt = attempts - 1;
+		for (int a = 0; a < attempts; a++) {
+			if (durations[a] <= steadyDuration * (1 + STEADY_STATE_TOLERANCE)) {
+				steadyAttempt = a;
+				break;
+			}
+		}
+		_batchPhases[DEFINE].record(defined - start);
+		_batchPhases[LINK].record(linked - defined);
+		_batchPhases[INIT].record(initialized - linked);
+		_batchPhases[FIRST].record(durations[0]);
+		_batchPhases[STEADY].record(attemptEnds[steadyAttempt] - start);
+		reallyVerbose("  Phases: define " + (defined - start) + "ns link " + (linked - defined) + "ns init " + (initialized - linked)
+			+ "ns first " + durations[0] + "ns steady after attempt " + steadyAttempt);
+	}
+
 	static final int ITERATIONS_PER_BATCH = option("iterationsPerBatch", 500);
-	static final int BATCHES_PER_CLASS    = option("batchesPerClass", 5);
+	static final int BATCHES_PER_CLASS    = Math.max(option("batchesPerClass", 5), 1);
+
+	static final float STEADY_STATE_TOLERANCE = option("steadyStateTolerance", 0.1F);
 
 	static final boolean VERBOSE_STARTUP  = option("verboseStartup", false);
 	static final boolean REALLY_VERBOSE_STARTUP  = option("reallyVerboseStartup", false);
 
-	final Class _workloadClass;
+	static final String[] PHASES = { "define", "link", "init", "first", "steady" };
+	static final int DEFINE = 0, LINK = 1, INIT = 2, FIRST = 3, STEADY = 4;
+
+	final Class<?> _workloadClass;
+	final byte[] _classBytes;
+
+	final LatencyHistogram[] _batchPhases  = histograms();
+	final LatencyHistogram[] _finalePhases = histograms();
 
 	private StartupBench(Class<BumbleBench> workloadClass) {
 		_workloadClass = workloadClass;
+		_classBytes    = classBytes(workloadClass);
 	}
 
 	static StartupBench create(Class<BumbleBench> workloadClass) {
 		return new StartupBench(workloadClass);
 	}
 
+	static LatencyHistogram[] histograms() {
+		LatencyHistogram[] result = new LatencyHistogram[PHASES.length];
+		for (int p = 0; p < PHASES.length; p++)
+			result[p] = new LatencyHistogram();
+		return result;
+	}
+
+	/** Notes when each element is taken from or put into the queue. */
+	static final class TimestampedQueue extends ArrayBlockingQueue<Float> {
+		private static final long serialVersionUID = 1L;
+
+		final long[] _takeNanos, _putNanos;
+		int _takes, _puts;
+
+		TimestampedQueue(int capacity) {
+			super(capacity);
+			_takeNanos = new long[capacity];
+			_putNanos  = new long[capacity];
+		}
+
+		public Float take() throws InterruptedException {
+			Float result = super.take();
+			if (_takes < _takeNanos.length)
+				_takeNanos[_takes++] = System.nanoTime();
+			return result;
+		}
+
+		public void put(Float element) throws InterruptedException {
+			if (_puts < _putNanos.length)
+				_putNanos[_puts++] = System.nanoTime();
+			super.put(element);
+		}
+	}
+
+	public void run() {
+		super.run();
+		if (_finalePhases[DEFINE].count() == 0)
+			return;
+		out().println("  startup phases (finale, " + _finalePhases[DEFINE].count() + " instances):");
+		for (int p = 0; p < PHASES.length; p++) {
+			LatencyHistogram h = _finalePhases[p];
+			StringBuilder sb = new StringBuilder("    " + PHASES[p] + "\t");
+			for (double percentile: LatencyBench.SUMMARY_PERCENTILES)
+				sb.append("  p").append(LatencyBench.percentileName(percentile)).append(' ').append(LatencyBench.nanos(h.valueAtPercentile(percentile)));
+			sb.append("  max ").append(LatencyBench.nanos(h.max()));
+			out().println(sb);
+
+			if (_results != null) {
+				ResultsSink.Record record = new ResultsSink.Record("startupPhase")
+					.put("benchmark", _name)
+					.put("workload",  _workloadClass.getName())
+					.put("phase",     PHASES[p])
+					.put("instances", h.count());
+				for (double percentile: LatencyBench.SUMMARY_PERCENTILES)
+					record.put("p" + LatencyBench.percentileName(percentile) + "Nanos", h.valueAtPercentile(percentile));
+				record.put("maxNanos", h.max());
+				_results.write(record);
+			}
+		}
+	}
+
+	String extraReportHeader() {
+		StringBuilder sb = new StringBuilder(super.extraReportHeader());
+		for (String phase: PHASES)
+			sb.append('\t').append(phase);
+		return sb.toString();
+	}
+
+	String reportInfoAfterPaused() {
+		StringBuilder sb = new StringBuilder(super.reportInfoAfterPaused());
+		for (LatencyHistogram h: _batchPhases)
+			sb.append('\t').append(LatencyBench.nanos(h.valueAtPercentile(50)));
+		return sb.toString();
+	}
+
+	void addExtraResults(ResultsSink.Record record) {
+		super.addExtraResults(record);
+		for (int p = 0; p < PHASES.length; p++)
+			record.put(PHASES[p] + "P50Nanos", _batchPhases[p].valueAtPercentile(50));
+	}
+
 	void verbose(String message) {
 		if (VERBOSE_STARTUP)
 			out().println(message);
@@ -81,4 +243,3 @@ public final class StartupBench extends MicroBench {
 	}
 
 }
-
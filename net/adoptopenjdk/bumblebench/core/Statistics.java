@@ -0,0 +1,126 @@
+/*******************************************************************************
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*******************************************************************************/
+
+package net.adoptopenjdk.bumblebench.core;
+
+/**
+ * Running mean and variance of a series of samples, plus the quantile
+ * functions needed to turn them into confidence intervals.
+ * <p>
+ * Uses Welford's method, so samples can be added one at a time without
+ * keeping them around and without losing precision on long series.
+ */
+final class Statistics {
+
+	private long   _count;
+	private double _mean;
+	private double _sumOfSquaredDeviations;
+	private double _min = Double.POSITIVE_INFINITY;
+	private double _max = Double.NEGATIVE_INFINITY;
+
+	void add(double sample) {
+		_count++;
+		double delta = sample - _mean;
+		_mean += delta / _count;
+		_sumOfSquaredDeviations += delta * (sample - _mean);
+		_min = Math.min(_min, sample);
+		_max = Math.max(_max, sample);
+	}
+
+	void reset() {
+		_count = 0;
+		_mean = _sumOfSquaredDeviations = 0;
+		_min = Double.POSITIVE_INFINITY;
+		_max = Double.NEGATIVE_INFINITY;
+	}
+
+	long   count() { return _count; }
+	double mean()  { return _mean;  }
+	double min()   { return _min;   }
+	double max()   { return _max;   }
+
+	/** Sample variance, using Bessel's correction. */
+	double variance() {
+		return (_count < 2)? Double.NaN : _sumOfSquaredDeviations / (_count - 1);
+	}
+
+	double standardDeviation() { return Math.sqrt(variance()); }
+
+	double standardError() { return Math.sqrt(variance() / _count); }
+
+	/** Half the width of the two-sided confidence interval for the mean at the given confidence level (eg. 0.95). */
+	double confidenceHalfWidth(double confidence) {
+		if (_count < 2)
+			return Double.POSITIVE_INFINITY;
+		return studentTQuantile(0.5 + confidence/2, _count - 1) * standardError();
+	}
+
+	/** {@link #confidenceHalfWidth} as a fraction of the mean. */
+	double relativeConfidenceHalfWidth(double confidence) {
+		return confidenceHalfWidth(confidence) / Math.abs(_mean);
+	}
+
+	/*
+	 * Quantile functions
+	 */
+
+	/** Inverse of the standard normal CDF, using Acklam's rational approximation (relative error below 1.2e-9). */
+	static double normalQuantile(double p) {
+		if (p <= 0)
+			return Double.NEGATIVE_INFINITY;
+		if (p >= 1)
+			return Double.POSITIVE_INFINITY;
+		final double[] a = { -3.969683028665376e+01,  2.209460984245205e+02, -2.759285104469687e+02,  1.383577518672690e+02, -3.066479806614716e+01,  2.506628277459239e+00 };
+		final double[] b = { -5.447609879822406e+01,  1.615858368580409e+02, -1.556989798598866e+02,  6.680131188771972e+01, -1.328068155288572e+01 };
+		final double[] c = { -7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00, -2.549732539343734e+00,  4.374664141464968e+00,  2.938163982698783e+00 };
+		final double[] d = {  7.784695709041462e-03,  3.224671290700398e-01,  2.445134137142996e+00,  3.754408661907416e+00 };
+		final double low = 0.02425;
+		if (p < low) {
+			double q = Math.sqrt(-2*Math.log(p));
+			return (((((c[0]*q+c[1])*q+c[2])*q+c[3])*q+c[4])*q+c[5]) / ((((d[0]*q+d[1])*q+d[2])*q+d[3])*q+1);
+		} else if (p <= 1 - low) {
+			double q = p - 0.5;
+			double r = q*q;
+			return (((((a[0]*r+a[1])*r+a[2])*r+a[3])*r+a[4])*r+a[5])*q / (((((b[0]*r+b[1])*r+b[2])*r+b[3])*r+b[4])*r+1);
+		} else {
+			double q = Math.sqrt(-2*Math.log(1-p));
+			return -(((((c[0]*q+c[1])*q+c[2])*q+c[3])*q+c[4])*q+c[5]) / ((((d[0]*q+d[1])*q+d[2])*q+d[3])*q+1);
+		}
+	}
+
+	/** Inverse of Student's t CDF with the given degrees of freedom.
+	 * <p>
+	 * Exact for one and two degrees of freedom; beyond that, uses the
+	 * Cornish-Fisher expansion around the normal quantile, which is accurate to
+	 * a few parts in a thousand at the confidence levels benchmarks care about.
+	 */
+	static double studentTQuantile(double p, long degreesOfFreedom) {
+		if (degreesOfFreedom < 1)
+			return Double.NaN;
+		if (degreesOfFreedom == 1)
+			return Math.tan(Math.PI * (p - 0.5));
+		if (degreesOfFreedom == 2)
+			return (2*p - 1) / Math.sqrt(2*p*(1-p));
+		double n  = degreesOfFreedom;
+		double z  = normalQuantile(p);
+		double z2 = z*z;
+		double z3 = z2*z, z5 = z3*z2, z7 = z5*z2, z9 = z7*z2;
+		return z
+			+ (z3 + z) / (4*n)
+			+ (5*z5 + 16*z3 + 3*z) / (96*n*n)
+			+ (3*z7 + 19*z5 + 17*z3 - 15*z) / (384*n*n*n)
+			+ (79*z9 + 776*z7 + 1482*z5 - 1920*z3 - 945*z) / (92160*n*n*n*n);
+	}
+
+}
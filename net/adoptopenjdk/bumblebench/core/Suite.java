@@ -0,0 +1,186 @@
+/*******************************************************************************
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*******************************************************************************/
+
+package net.adoptopenjdk.bumblebench.core;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+/**
+ * Runs a series of benchmarks in one JVM and summarizes their scores.
+ * <p>
+ * The benchmarks are chosen by matching patterns against the names that
+ * {@link Launcher} lists when run without arguments.  Patterns come from any
+ * combination of:
+ * <ul>
+ * <li>the command-line arguments,
+ * <li>option <tt>include</tt> and option <tt>exclude</tt>, each a comma-separated list, and
+ * <li>a suite file named by option <tt>suite</tt>, with one pattern per line.
+ *     Blank lines and lines starting with <tt>#</tt> are ignored, and a line
+ *     starting with <tt>!</tt> is an exclude pattern.
+ * </ul>
+ * A pattern is a glob using <tt>*</tt> and <tt>?</tt>, unless it is enclosed
+ * in slashes, in which case it is a regular expression.  Benchmarks run in
+ * the order they are listed, and a failure in one does not stop the rest.
+ * <p>
+ * Each benchmark's <tt>.properties</tt> file is loaded when it starts, and the
+ * system properties are restored when it finishes, so one benchmark's settings
+ * do not leak into the next.  Note that options read by the core classes
+ * themselves (such as <tt>batchTargetDuration</tt>) are fixed by the first
+ * benchmark that runs, so they should be set on the command line instead.
+ * With option <tt>forks</tt>, each benchmark runs in its own child JVMs
+ * instead (see {@link Fork}), which avoids both problems.
+ */
+final class Suite extends Util {
+
+	static final String SUITE_FILE = option("suite", "");
+	static final String INCLUDE    = option("include", "");
+	static final String EXCLUDE    = option("exclude", "");
+
+	final List<Pattern> _includes = new ArrayList<Pattern>();
+	final List<Pattern> _excludes = new ArrayList<Pattern>();
+
+	/** True if the command line asks for more than a single, explicitly named benchmark. */
+	static boolean isRequested(String[] args) {
+		if (!SUITE_FILE.equals("") || !INCLUDE.equals(""))
+			return true;
+		else if (args.length > 1)
+			return true;
+		else
+			return args.length == 1 && isPatternSyntax(args[0]);
+	}
+
+	Suite(String[] args) throws IOException {
+		for (String arg: args)
+			_includes.add(compile(arg));
+		for (String p: INCLUDE.split(","))
+			if (!p.trim().equals(""))
+				_includes.add(compile(p.trim()));
+		for (String p: EXCLUDE.split(","))
+			if (!p.trim().equals(""))
+				_excludes.add(compile(p.trim()));
+		if (!SUITE_FILE.equals(""))
+			readSuiteFile(SUITE_FILE);
+	}
+
+	void readSuiteFile(String fileName) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(fileName));
+		try {
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				line = line.trim();
+				if (line.equals("") || line.startsWith("#"))
+					continue;
+				else if (line.startsWith("!"))
+					_excludes.add(compile(line.substring(1).trim()));
+				else
+					_includes.add(compile(line));
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	List<String> select(List<String> names) {
+		List<String> result = new ArrayList<String>();
+		for (String name: names)
+			if (matchesAny(name, _includes) && !matchesAny(name, _excludes))
+				result.add(name);
+		return result;
+	}
+
+	/** Runs each of the given benchmarks and prints a summary table. */
+	List<BenchmarkResult> run(String[] packages, List<String> names) {
+		List<BenchmarkResult> results = new ArrayList<BenchmarkResult>();
+		for (String name: names)
+			results.add(runOne(packages, name));
+		printSummary(results);
+		return results;
+	}
+
+	BenchmarkResult runOne(String[] packages, String name) {
+		Properties savedProperties = (Properties)System.getProperties().clone();
+		try {
+			if (Fork.FORKS >= 1)
+				return new Fork(name).run();
+			Class<?> testClass = Launcher.loadTestClass(packages, name.replace('.', '$'));
+			return BenchmarkResult.of(name, Launcher.runBenchmark(testClass));
+		} catch (Throwable t) {
+			out().println("\n!!! " + name + " failed: " + t);
+			if (BumbleBench.VERBOSE)
+				t.printStackTrace(out());
+			return BenchmarkResult.failed(name, t);
+		} finally {
+			System.setProperties(savedProperties);
+		}
+	}
+
+	static void printSummary(List<BenchmarkResult> results) {
+		int failures = 0;
+		int nameWidth = "Benchmark".length();
+		for (BenchmarkResult r: results) {
+			nameWidth = Math.max(nameWidth, r._name.length());
+			if (!r.succeeded())
+				failures++;
+		}
+		String format = "  %-" + nameWidth + "s  %12s  %7s  %s";
+		out().println("\n-= BumbleBench suite summary: " + results.size() + " benchmarks, " + failures + " failed =-\n");
+		out().println(String.format(format, "Benchmark", "Score", "Uncert%", "Status"));
+		for (BenchmarkResult r: results) {
+			if (r._error != null)
+				out().println(String.format(format, r._name, "--", "--", r.status()));
+			else
+				out().println(String.format(format, r._name, BumbleBench.score(r._score), BumbleBench.percentage(r._uncertainty), r.status()));
+		}
+	}
+
+	/*
+	 * Patterns
+	 */
+
+	static boolean isPatternSyntax(String s) {
+		return isRegex(s) || s.indexOf('*') != -1 || s.indexOf('?') != -1;
+	}
+
+	static boolean isRegex(String s) {
+		return s.length() >= 2 && s.startsWith("/") && s.endsWith("/");
+	}
+
+	static Pattern compile(String pattern) {
+		if (isRegex(pattern))
+			return Pattern.compile(pattern.substring(1, pattern.length()-1));
+		StringBuilder regex = new StringBuilder();
+		for (char c: pattern.replace('$', '.').toCharArray()) {
+			if (c == '*')
+				regex.append(".*");
+			else if (c == '?')
+				regex.append('.');
+			else
+				regex.append(Pattern.quote(String.valueOf(c)));
+		}
+		return Pattern.compile(regex.toString());
+	}
+
+	static boolean matchesAny(String name, List<Pattern> patterns) {
+		for (Pattern p: patterns)
+			if (p.matcher(name).matches())
+				return true;
+		return false;
+	}
+
+}
@@ -0,0 +1,211 @@
+/*******************************************************************************
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*******************************************************************************/
+
+package net.adoptopenjdk.bumblebench.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * Runs one benchmark over every combination of a set of option values.
+ * <p>
+ * Each option <tt>sweep.<i>name</i></tt> gives a comma-separated list of
+ * values for option <tt><i>name</i></tt>; for example
+ * <tt>-DBumbleBench.sweep.payload=64,1024,16384</tt>.  With several such
+ * options, the benchmark runs once for each combination of their values
+ * (the cartesian product), and the results are tabulated by parameter value.
+ * <p>
+ * Benchmarks read their options into static finals when their class is
+ * initialized, so each combination runs in a freshly loaded copy of the
+ * benchmark class.  That only reloads the benchmark class itself; options
+ * read by other classes (including the framework's own options, like
+ * <tt>batchTargetDuration</tt>) need <tt>forks</tt>, which runs each
+ * combination in its own JVM instead.
+ * <p>
+ * Either way, the swept values take precedence over those in the
+ * benchmark's properties file.  In a forked child, which loads that file
+ * itself, the swept options are named by option <tt>sweptOptions</tt> so the
+ * child can put their values back with {@link #keepSweptValues}.
+ */
+final class Sweep extends Util {
+
+	static final String SWEEP_PREFIX = "sweep.";
+	static final String SWEPT_OPTIONS = "sweptOptions";
+
+	final String _name;
+	final String[]   _parameters;  // Option names, in alphabetical order
+	final String[][] _values;      // Values for each parameter
+
+	static boolean isRequested() {
+		return !sweptParameters().isEmpty();
+	}
+
+	private static TreeSet<String> sweptParameters() {
+		TreeSet<String> result = new TreeSet<String>();
+		for (String key: System.getProperties().stringPropertyNames())
+			if (key.startsWith(PROPERTY_PREFIX + SWEEP_PREFIX))
+				result.add(key.substring((PROPERTY_PREFIX + SWEEP_PREFIX).length()));
+		return result;
+	}
+
+	/** Returns the values a forked child was given for the swept options, so
+	 * they can be restored after the benchmark's properties file is loaded.
+	 */
+	static Properties sweptValues() {
+		Properties result = new Properties();
+		String sweptOptions = option(SWEPT_OPTIONS, "");
+		if (!sweptOptions.isEmpty())
+			for (String name: sweptOptions.split(",")) {
+				String value = optionString(name);
+				if (value != null)
+					result.setProperty(PROPERTY_PREFIX + name, value);
+			}
+		return result;
+	}
+
+	/** Puts back the swept values returned by {@link #sweptValues}. */
+	static void keepSweptValues(Properties sweptValues) {
+		for (String key: sweptValues.stringPropertyNames()) {
+			String fromFile = System.getProperty(key);
+			if (!sweptValues.getProperty(key).equals(fromFile)) {
+				if (BumbleBench.VERBOSE)
+					out().println("Sweep overrides " + key + "=" + fromFile + " from the properties file");
+				System.setProperty(key, sweptValues.getProperty(key));
+			}
+		}
+	}
+
+	Sweep(String name) {
+		_name = name;
+		TreeSet<String> parameters = sweptParameters();
+		_parameters = parameters.toArray(new String[parameters.size()]);
+		_values = new String[_parameters.length][];
+		for (int i = 0; i < _parameters.length; i++) {
+			String[] values = optionString(SWEEP_PREFIX + _parameters[i]).split(",");
+			for (int j = 0; j < values.length; j++)
+				values[j] = values[j].trim();
+			_values[i] = values;
+		}
+	}
+
+	List<BenchmarkResult> run(String[] packages) throws Exception {
+		// Load the class first so that its properties file can't override the swept values
+		Class<?> testClass = Launcher.loadTestClass(packages, _name.replace('.', '$'));
+		if (Fork.FORKS < 1)
+			out().println("NOTE: Each combination runs in a freshly loaded " + testClass.getSimpleName()
+				+ "; options read by other classes need forks to take effect");
+
+		List<String[]> combinations = combinations();
+		List<BenchmarkResult> results = new ArrayList<BenchmarkResult>();
+		for (String[] combination: combinations) {
+			String label = label(combination);
+			out().println("\n-= Sweep " + (results.size() + 1) + " of " + combinations.size() + ": " + label + " =-");
+			results.add(runOne(testClass, combination, label));
+		}
+		printTable(results, combinations);
+		return results;
+	}
+
+	/** All combinations of parameter values, varying the last parameter fastest. */
+	List<String[]> combinations() {
+		List<String[]> result = new ArrayList<String[]>();
+		int[] indexes = new int[_parameters.length];
+		while (true) {
+			String[] combination = new String[_parameters.length];
+			for (int i = 0; i < combination.length; i++)
+				combination[i] = _values[i][indexes[i]];
+			result.add(combination);
+			int i = indexes.length - 1;
+			while (i >= 0 && ++indexes[i] == _values[i].length)
+				indexes[i--] = 0;
+			if (i < 0)
+				return result;
+		}
+	}
+
+	String label(String[] combination) {
+		StringBuilder sb = new StringBuilder(_name).append('[');
+		for (int i = 0; i < combination.length; i++)
+			sb.append((i == 0)? "" : ",").append(_parameters[i]).append('=').append(combination[i]);
+		return sb.append(']').toString();
+	}
+
+	BenchmarkResult runOne(Class<?> testClass, String[] combination, String label) {
+		Properties savedProperties = (Properties)System.getProperties().clone();
+		try {
+			for (int i = 0; i < combination.length; i++)
+				System.setProperty(PROPERTY_PREFIX + _parameters[i], combination[i]);
+			BenchmarkResult result;
+			if (Fork.FORKS >= 1) {
+				System.setProperty(PROPERTY_PREFIX + SWEPT_OPTIONS, String.join(",", _parameters));
+				result = new Fork(_name).run();
+			} else {
+				result = BenchmarkResult.of(_name, Launcher.runBenchmark(freshlyLoadedClass(testClass)));
+			}
+			writeRecord(label, combination, result);
+			return new BenchmarkResult(label, result._score, result._uncertainty, result._verified, result._error);
+		} catch (Throwable t) {
+			out().println("\n!!! " + label + " failed: " + t);
+			if (BumbleBench.VERBOSE)
+				t.printStackTrace(out());
+			return BenchmarkResult.failed(label, t);
+		} finally {
+			System.setProperties(savedProperties);
+		}
+	}
+
+	void writeRecord(String label, String[] combination, BenchmarkResult result) {
+		ResultsSink results = ResultsSink.instance();
+		if (results == null)
+			return;
+		ResultsSink.Record record = new ResultsSink.Record("sweep")
+			.put("benchmark", _name)
+			.put("label",     label);
+		for (int i = 0; i < combination.length; i++)
+			record.put(_parameters[i], combination[i]);
+		record.put("score",       result._score)
+			.put("uncertainty", result._uncertainty)
+			.put("verified",    result.succeeded());
+		results.write(record);
+	}
+
+	void printTable(List<BenchmarkResult> results, List<String[]> combinations) {
+		int[] widths = new int[_parameters.length];
+		for (int i = 0; i < _parameters.length; i++) {
+			widths[i] = _parameters[i].length();
+			for (String value: _values[i])
+				widths[i] = Math.max(widths[i], value.length());
+		}
+		out().println("\n-= " + _name + " parameter sweep: " + results.size() + " combinations =-\n");
+		StringBuilder header = new StringBuilder();
+		for (int i = 0; i < _parameters.length; i++)
+			header.append(String.format("  %" + widths[i] + "s", _parameters[i]));
+		out().println(header + String.format("  %12s  %7s  %s", "Score", "Uncert%", "Status"));
+		for (int r = 0; r < results.size(); r++) {
+			BenchmarkResult result = results.get(r);
+			String[] combination = combinations.get(r);
+			StringBuilder line = new StringBuilder();
+			for (int i = 0; i < combination.length; i++)
+				line.append(String.format("  %" + widths[i] + "s", combination[i]));
+			if (result._error != null)
+				line.append(String.format("  %12s  %7s  %s", "--", "--", result.status()));
+			else
+				line.append(String.format("  %12s  %7s  %s", BumbleBench.score(result._score), BumbleBench.percentage(result._uncertainty), result.status()));
+			out().println(line);
+		}
+	}
+
+}
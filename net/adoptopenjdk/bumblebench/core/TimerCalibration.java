@@ -0,0 +1,100 @@
+/*******************************************************************************
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*******************************************************************************/
+
+package net.adoptopenjdk.bumblebench.core;
+
+/**
+ * Measures what the MicroBench timer itself costs: the granularity of
+ * <tt>System.nanoTime</tt>, and how much unpaused time a
+ * <tt>pauseTimer</tt>/<tt>startTimer</tt> pair adds to a batch even when
+ * there is no work between them.
+ * <p>
+ * Calibration runs once, after the first batch that pauses its timer, on
+ * an empty workload in the style of <tt>EmptyBench</tt>, using the timer
+ * without its <tt>verbosePause</tt> output.  It is skipped under
+ * <tt>warmupProfile</tt>, which must start cold.  The result is printed only
+ * with option <tt>verbose</tt>, or with the warning a batch prints when the
+ * timer costs too much of its time.  The pair cost is
+ * the minimum over several rounds, so subtracting it never removes more
+ * than the timer really costs.
+ */
+final class TimerCalibration extends Util {
+
+	static final int  CALIBRATION_ROUNDS = option("timerCalibrationRounds", 20);
+	static final long CALIBRATION_PAIRS  = option("timerCalibrationPairs", 20000L);
+
+	final float _pairNanos;
+	final long  _granularityNanos;
+
+	private static TimerCalibration _instance;
+
+	static synchronized TimerCalibration get() {
+		if (_instance == null) {
+			_instance = new TimerCalibration();
+			if (BumbleBench.VERBOSE)
+				out().println("   -- timer calibration: " + _instance + " --");
+		}
+		return _instance;
+	}
+
+	public String toString() {
+		return "a pause/start pair costs " + BumbleBench.pretty(_pairNanos) + "ns; nanoTime granularity is " + _granularityNanos + "ns";
+	}
+
+	private TimerCalibration() {
+		_granularityNanos = measureGranularity();
+		EmptyPauses empty = new EmptyPauses();
+		float best = Float.POSITIVE_INFINITY;
+		for (int round = 0; round < CALIBRATION_ROUNDS; round++)
+			best = Math.min(best, empty.unpausedNanosPerPair(CALIBRATION_PAIRS));
+		_pairNanos = best;
+	}
+
+	static long measureGranularity() {
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < 1000; i++) {
+			long start = System.nanoTime();
+			long next;
+			while ((next = System.nanoTime()) == start)
+				;
+			best = Math.min(best, next - start);
+		}
+		return best;
+	}
+
+	/** A workload that does nothing but pause and restart the timer. */
+	static final class EmptyPauses extends MicroBench {
+
+		protected long doBatch(long numIterations) throws InterruptedException {
+			for (long i = 0; i < numIterations; i++) {
+				pauseTimerQuietly();
+				startTimerQuietly();
+			}
+			return numIterations;
+		}
+
+		float unpausedNanosPerPair(long pairs) {
+			resetTimer();
+			long startTime = System.nanoTime();
+			try {
+				doBatch(pairs);
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			long elapsedTime = System.nanoTime() - startTime;
+			return (float)(elapsedTime - pauseTotalDuration()) / pairs;
+		}
+	}
+
+}
@@ -178,14 +178,17 @@ public class Util {
 
 	protected static Class freshlyLoadedClass(final Class original) {
 		try {
-			final String classFileName = "/" + original.getName().replace('.', '/') + ".class";
-			final byte[] classBytes = readFully(original.getClass().getResourceAsStream(classFileName));
-			return new OneOffLoader(original.getName(), classBytes, original.getClassLoader()).loadClass(original.getName());
+			return new OneOffLoader(original.getName(), classBytes(original), original.getClassLoader()).loadClass(original.getName());
 		} catch (Exception e) {
 			throw new RuntimeException(e);
 		}
 	}
 
+	static byte[] classBytes(Class<?> original) {
+		final String classFileName = "/" + original.getName().replace('.', '/') + ".class";
+		return readFully(original.getResourceAsStream(classFileName));
+	}
+
 	private static byte[] readFully(InputStream stream) {
 		try {
 			if (IO_UTILS_READ_ALL_BYTES != null) {
@@ -241,7 +244,10 @@ public class Util {
 
 		public Class loadClass(String name) throws ClassNotFoundException {
 			if (name.equals(_className)) try {
-				// Don't delegate.  Re-define the class
+				// Don't delegate.  Re-define the class, once
+				Class<?> loaded = findLoadedClass(name);
+				if (loaded != null)
+					return loaded;
 				return defineClass(name, _classBytes, 0, _classBytes.length);
 			} catch (Exception e) {
 				throw new RuntimeException(e);
@@ -0,0 +1,190 @@
+/*******************************************************************************
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*******************************************************************************/
+
+package net.adoptopenjdk.bumblebench.core;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Access to virtual threads and the threads that carry them.
+ * <p>
+ * BumbleBench is built for Java 8, so everything here goes through
+ * reflection and only works when running on Java 21 or later.
+ */
+final class VirtualThreads extends Util {
+
+	static final String CARRIER_THREAD_CLASS = "jdk.internal.misc.CarrierThread";
+
+	private static final Method OF_VIRTUAL;
+	private static final Method BUILDER_NAME;
+	private static final Method BUILDER_UNSTARTED;
+
+	static {
+		Method ofVirtual = null, builderName = null, builderUnstarted = null;
+		try {
+			Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			ofVirtual        = Thread.class.getMethod("ofVirtual");
+			builderName      = builder.getMethod("name", String.class);
+			builderUnstarted = builder.getMethod("unstarted", Runnable.class);
+			// On Java 19 and 20 this throws unless preview features are enabled
+			ofVirtual.invoke(null);
+		} catch (Exception e) {
+			ofVirtual = null;
+		}
+		OF_VIRTUAL        = ofVirtual;
+		BUILDER_NAME      = builderName;
+		BUILDER_UNSTARTED = builderUnstarted;
+	}
+
+	static boolean available() { return OF_VIRTUAL != null; }
+
+	/** Returns a new, unstarted virtual thread that will run the given task. */
+	static Thread newThread(Runnable task, String name) {
+		if (!available())
+			throw new Error("Virtual threads need Java 21 or later; this is Java " + System.getProperty("java.version"));
+		try {
+			Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), name);
+			return (Thread)BUILDER_UNSTARTED.invoke(builder, task);
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** The number of carrier threads the default virtual thread scheduler aims to keep busy. */
+	static int schedulerParallelism() {
+		String value = System.getProperty("jdk.virtualThreadScheduler.parallelism");
+		try {
+			if (value != null)
+				return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+		}
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Measures how busy the carrier threads were between calls to
+	 * {@link #sample}, as the CPU time they used over the time they could
+	 * have used.
+	 */
+	static final class CarrierMonitor {
+
+		private final ThreadMXBean _threads = ManagementFactory.getThreadMXBean();
+		private final Map<Long, Long> _lastCpuNanos = new HashMap<Long, Long>();
+		private final int _parallelism = schedulerParallelism();
+		private long _lastSampleNanos;
+
+		CarrierMonitor() {
+			sample();
+		}
+
+		/** Returns the carrier utilisation (0 to 1) since the last sample, or NaN if it can't be measured. */
+		float sample() {
+			long now = System.nanoTime();
+			long cpuNanos = 0;
+			Map<Long, Long> current = new HashMap<Long, Long>();
+			for (Thread t: allPlatformThreads()) {
+				if (!t.getClass().getName().equals(CARRIER_THREAD_CLASS))
+					continue;
+				long cpu = _threads.isThreadCpuTimeSupported()? _threads.getThreadCpuTime(t.getId()) : -1;
+				if (cpu < 0)
+					continue;
+				Long last = _lastCpuNanos.get(t.getId());
+				cpuNanos += cpu - ((last == null)? 0 : last);
+				current.put(t.getId(), cpu);
+			}
+			_lastCpuNanos.clear();
+			_lastCpuNanos.putAll(current);
+			long elapsed = now - _lastSampleNanos;
+			_lastSampleNanos = now;
+			if (!_threads.isThreadCpuTimeSupported() || elapsed <= 0)
+				return Float.NaN;
+			return (float)cpuNanos / elapsed / _parallelism;
+		}
+
+		int parallelism() { return _parallelism; }
+
+		private static Thread[] allPlatformThreads() {
+			ThreadGroup root = Thread.currentThread().getThreadGroup();
+			while (root.getParent() != null)
+				root = root.getParent();
+			Thread[] threads = new Thread[root.activeCount() + 16];
+			int count;
+			while ((count = root.enumerate(threads, true)) == threads.length)
+				threads = new Thread[threads.length * 2];
+			Thread[] result = new Thread[count];
+			System.arraycopy(threads, 0, result, 0, count);
+			return result;
+		}
+	}
+
+	/**
+	 * Counts <tt>jdk.VirtualThreadPinned</tt> JFR events, which happen when a
+	 * virtual thread blocks while it can't be unmounted from its carrier.
+	 * Events arrive from a JFR stream in the background, roughly a second
+	 * after they happen, so counts are only exact once the counter is
+	 * {@link #close closed}.
+	 */
+	static final class PinningCounter {
+
+		private final AtomicLong _count = new AtomicLong();
+		private final Object _stream;
+
+		PinningCounter() {
+			Object stream = null;
+			try {
+				Class<?> streamClass = Class.forName("jdk.jfr.consumer.RecordingStream");
+				stream = streamClass.getConstructor().newInstance();
+				Object settings = streamClass.getMethod("enable", String.class).invoke(stream, "jdk.VirtualThreadPinned");
+				settings.getClass().getMethod("withThreshold", Duration.class).invoke(settings, Duration.ZERO);
+				streamClass.getMethod("onEvent", String.class, java.util.function.Consumer.class).invoke(stream, "jdk.VirtualThreadPinned",
+					new java.util.function.Consumer<Object>() {
+						public void accept(Object event) { _count.incrementAndGet(); }
+					});
+				streamClass.getMethod("startAsync").invoke(stream);
+			} catch (Exception e) {
+				out().println("NOTE: Can't count virtual thread pinning on this JVM: " + e);
+				stream = null;
+			}
+			_stream = stream;
+		}
+
+		boolean available() { return _stream != null; }
+
+		long count() { return _count.get(); }
+
+		/** Stops counting, after waiting for the events recorded so far to arrive. */
+		void close() {
+			if (_stream == null)
+				return;
+			try {
+				Class<?> streamClass = _stream.getClass();
+				try {
+					streamClass.getMethod("stop").invoke(_stream);
+				} catch (NoSuchMethodException e) {
+					// Before Java 20 there's no way to flush the stream; some events may be missed
+				}
+				streamClass.getMethod("close").invoke(_stream);
+			} catch (Exception e) {
+				out().println("NOTE: Error closing JFR stream: " + e);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,192 @@
+/*******************************************************************************
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*******************************************************************************/
+
+package net.adoptopenjdk.bumblebench.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Profiles how a {@link MicroBench} warms up, instead of searching for its
+ * peak score.
+ * <p>
+ * Selected with option <tt>warmupProfile</tt>.  From the start of the run,
+ * the benchmark's <tt>doBatch</tt> is called with a fixed number of
+ * iterations per batch for <tt>warmupProfileSeconds</tt>.  The batch size is
+ * <tt>warmupProfileIterations</tt> or, by default, the number of iterations
+ * the benchmark's <tt>initialEstimate</tt> would do in one
+ * <tt>batchTargetDuration</tt>.  Batches are grouped by the time they
+ * finished into bins of <tt>warmupProfileBinMillis</tt>, and each bin's
+ * throughput is the iterations of its batches over their measured time, so
+ * small batches don't make the curve noisy.
+ * <p>
+ * The eventual peak is the median throughput of the bins in the last
+ * quarter of the run.  The run reports the time at which a bin first reached
+ * each of the <tt>warmupProfilePercents</tt> of that peak, and the area
+ * under the throughput curve (which is the number of iterations done) as a
+ * fraction of what running at the peak for the measured time of all the
+ * batches would have done.  The score is the peak.  Use <tt>forks</tt> to
+ * profile several cold starts.
+ */
+final class WarmupProfile extends Util {
+
+	static final long   WARMUP_PROFILE_ITERATIONS  = option("warmupProfileIterations", 0L);
+	static final float  WARMUP_PROFILE_SECONDS     = option("warmupProfileSeconds", 10F);
+	static final long   WARMUP_PROFILE_BIN_MILLIS  = Math.max(option("warmupProfileBinMillis", 10L), 1L);
+	static final String WARMUP_PROFILE_PERCENTS    = option("warmupProfilePercents", "50,90,99");
+
+	// The curve is printed at these times, in seconds, as far as the run goes
+	static final double[] CURVE_SECONDS = { 0.01, 0.02, 0.05, 0.1, 0.2, 0.5, 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000 };
+
+	final MicroBench _bench;
+
+	// One entry per bin that any batch finished in
+	final List<Double> _seconds = new ArrayList<Double>(); // End of the bin
+	final List<Double> _rates   = new ArrayList<Double>();
+
+	WarmupProfile(MicroBench bench) {
+		_bench = bench;
+	}
+
+	static double[] parsePercents(String list) {
+		String[] fields = list.split(",");
+		double[] result = new double[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			result[i] = Double.parseDouble(fields[i].trim());
+			if (!(0 < result[i] && result[i] <= 100))
+				throw new Error("Unrecognized warmupProfilePercents entry: \"" + fields[i] + "\"");
+		}
+		return result;
+	}
+
+	void run() {
+		double[] percents = parsePercents(WARMUP_PROFILE_PERCENTS);
+		long iterations = WARMUP_PROFILE_ITERATIONS;
+		if (iterations <= 0)
+			iterations = Math.max((long)(option("initialEstimate", 100F) * MicroBench.Options.BATCH_TARGET_DURATION / 1000F), 1L);
+		_bench.reportBanner();
+		out().println("  Warmup profile: batches of " + iterations + " iterations for " + BumbleBench.pretty(WARMUP_PROFILE_SECONDS) + "s");
+
+		long startTime = System.nanoTime();
+		long endTime = startTime + (long)(WARMUP_PROFILE_SECONDS * 1.0e+9);
+		long binNanos = WARMUP_PROFILE_BIN_MILLIS * 1000000L;
+		long bin = 0;
+		double binIterations = 0, binSeconds = 0, totalIterations = 0, totalSeconds = 0;
+		long batches = 0;
+		try {
+			while (true) {
+				_bench.timeBatch(iterations, Float.NaN);
+				long now = System.nanoTime();
+				// doBatch may do a few more or fewer iterations than asked
+				double batchIterations = _bench._batchIterations, batchSeconds = _bench._batchNanos / 1.0e+9;
+				long batchBin = (now - startTime) / binNanos;
+				if (batchBin != bin && binIterations > 0) {
+					addBin(bin, binIterations, binSeconds);
+					binIterations = binSeconds = 0;
+				}
+				bin = batchBin;
+				binIterations   += batchIterations;
+				binSeconds      += batchSeconds;
+				totalIterations += batchIterations;
+				totalSeconds    += batchSeconds;
+				batches++;
+				if (now >= endTime)
+					break;
+			}
+		} catch (InterruptedException e) {
+			out().println("   -- interrupted: " + e.getMessage() + " --");
+		}
+		if (binIterations > 0)
+			addBin(bin, binIterations, binSeconds);
+		if (_rates.isEmpty()) {
+			_bench.finish(Float.NaN, Float.NaN);
+			return;
+		}
+		double elapsedSeconds = (System.nanoTime() - startTime) / 1.0e+9;
+
+		// The eventual peak, and how steady it is
+		List<Double> tailRates = new ArrayList<Double>();
+		Statistics tailStatistics = new Statistics();
+		for (int i = 0; i < _rates.size(); i++) {
+			if (_seconds.get(i) >= elapsedSeconds * 0.75) {
+				tailRates.add(_rates.get(i));
+				tailStatistics.add(_rates.get(i));
+			}
+		}
+		if (tailRates.isEmpty())
+			tailRates.add(_rates.get(_rates.size() - 1));
+		Collections.sort(tailRates);
+		double peak = tailRates.get(tailRates.size() / 2);
+
+		out().println("\n     seconds\trate\t%peak");
+		int c = 0;
+		for (int i = 0; i < _rates.size(); i++) {
+			// Print the first bin ending at or after each curve time
+			if (c < CURVE_SECONDS.length && _seconds.get(i) >= CURVE_SECONDS[c]) {
+				out().println(String.format("  %10s", BumbleBench.pretty(_seconds.get(i))) + "\t" + BumbleBench.score(_rates.get(i)) + "\t" + BumbleBench.percentage(_rates.get(i) / peak));
+				while (c < CURVE_SECONDS.length && _seconds.get(i) >= CURVE_SECONDS[c])
+					c++;
+			}
+		}
+
+		out().println("\n  " + batches + " batches in " + BumbleBench.pretty(elapsedSeconds) + "s, eventual peak " + BumbleBench.score(peak));
+		double[] timeToPercent = new double[percents.length];
+		for (int p = 0; p < percents.length; p++) {
+			timeToPercent[p] = Double.NaN;
+			for (int i = 0; i < _rates.size(); i++) {
+				if (_rates.get(i) >= peak * percents[p] / 100) {
+					timeToPercent[p] = _seconds.get(i);
+					break;
+				}
+			}
+			out().println("  time to " + BumbleBench.pretty(percents[p]) + "% of peak: "
+				+ (Double.isNaN(timeToPercent[p])? "never" : BumbleBench.pretty(timeToPercent[p]) + "s"));
+		}
+		// Measured time only, so the harness's own overhead between batches doesn't count against warmup
+		double efficiency = totalIterations / (peak * totalSeconds);
+		out().println("  area under curve: " + BumbleBench.pretty(totalIterations) + " iterations, "
+			+ BumbleBench.percentage(efficiency).trim() + "% of running at peak throughout");
+
+		ResultsSink results = _bench._results;
+		if (results != null) {
+			for (int i = 0; i < _rates.size(); i++)
+				results.write(new ResultsSink.Record("warmupBin")
+					.put("benchmark", _bench._name)
+					.put("seconds",   _seconds.get(i))
+					.put("rate",      _rates.get(i)));
+			ResultsSink.Record record = new ResultsSink.Record("warmupProfile")
+				.put("benchmark",       _bench._name)
+				.put("iterations",      iterations)
+				.put("batches",         batches)
+				.put("binMillis",       WARMUP_PROFILE_BIN_MILLIS)
+				.put("seconds",         elapsedSeconds)
+				.put("peak",            peak)
+				.put("totalIterations", totalIterations)
+				.put("efficiency",      efficiency);
+			for (int p = 0; p < percents.length; p++)
+				record.put("secondsTo" + BumbleBench.pretty(percents[p]) + "Percent", timeToPercent[p]);
+			results.write(record);
+		}
+
+		float uncertainty = (tailStatistics.count() >= 2)? (float)tailStatistics.relativeConfidenceHalfWidth(BumbleBench.CONFIDENCE_LEVEL) : 1F;
+		_bench.finish((float)peak, uncertainty);
+	}
+
+	void addBin(long bin, double iterations, double seconds) {
+		_seconds.add((bin + 1) * WARMUP_PROFILE_BIN_MILLIS / 1000.0);
+		_rates.add(iterations / seconds);
+	}
+
+}
@@ -20,6 +20,7 @@ import java.security.NoSuchProviderException;
 import java.util.Arrays;
 import java.util.Random;
 
+import net.adoptopenjdk.bumblebench.core.Blackhole;
 import net.adoptopenjdk.bumblebench.core.MicroBench;
 
 public final class DigestBench extends MicroBench {
@@ -61,9 +62,10 @@ public final class DigestBench extends MicroBench {
     protected long doBatch(long numBytes) throws InterruptedException {
 
         long numIterations = java.lang.Math.round((double)numBytes/data.length);
+        Blackhole blackhole = blackhole();
         for (long i = 0; i < numIterations; i++) {
             md.reset();
-            byte[] result = md.digest(data);
+            blackhole.consume(md.digest(data));
         }
         return numIterations*data.length;
     }
@@ -0,0 +1,30 @@
+/*******************************************************************************
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*******************************************************************************/
+
+package net.adoptopenjdk.bumblebench.crypto;
+
+import net.adoptopenjdk.bumblebench.core.LatencyBench;
+
+public final class DigestLatencyBench extends LatencyBench {
+
+    // DigestBench ported to LatencyBench: the same digest of the same
+    // payload, but scored in digests per second with the latency
+    // distribution of each digest reported alongside.
+
+    protected void doOperation() throws InterruptedException {
+        DigestBench.md.reset();
+        blackhole().consume(DigestBench.md.digest(DigestBench.data));
+    }
+
+}
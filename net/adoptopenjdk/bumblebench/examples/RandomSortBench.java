@@ -34,8 +34,6 @@ public final class RandomSortBench extends MiniBench {
 
 	protected int maxIterationsPerLoop(){ return nlogn(MAX_ARRAY_LENGTH); }
 
-	int escaped;
-
 	protected long doBatch(long numLoops, int numIterationsPerLoop) throws InterruptedException {
 		Random r = newRandom();
 
@@ -51,7 +49,7 @@ public final class RandomSortBench extends MiniBench {
 			pauseTimer();
 		}
 
-		escaped = numbers[0];
+		blackhole().consume(numbers[0]);
 		return numIterationsPerLoop * numLoops;
 	}
 
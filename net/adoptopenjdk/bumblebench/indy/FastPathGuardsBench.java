@@ -81,7 +81,7 @@ public class FastPathGuardsBench extends MiniBench {
 				sum = workload.compute(sum, value, 16777619);
 			}
 		}
-		_escape = sum;
+		blackhole().consume(sum);
 		return i;
 	}
 
@@ -90,8 +90,6 @@ public class FastPathGuardsBench extends MiniBench {
 	static final int ITERATIONS_PER_INDY = option("iterationsPerIndy", 100000);
 	static final int NUM_INTS            = option("numInts",           100);
 
-	int  _escape; // To prevent the optimizer from removing the whole method
-
 	/*
 	 * The workload class, containing an invokedynamic
 	 */
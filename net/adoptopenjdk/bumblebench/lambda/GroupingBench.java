@@ -34,7 +34,7 @@ public abstract class GroupingBench extends MiniBench {
 			startTimer();
 			Object result = coreOperation(list);
 			pauseTimer();
-			_escape += result.hashCode();
+			blackhole().consume(result);
 		}
 		return numLoops * numIterationsPerLoop;
 	}
@@ -53,8 +53,6 @@ public abstract class GroupingBench extends MiniBench {
 		}
 	}
 
-	int _escape;
-
 	List<Person> newList(int size) {
 		List<Person> result = new ArrayList<Person>(size);
 		Random r = newRandom();
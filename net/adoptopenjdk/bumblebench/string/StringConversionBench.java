@@ -17,6 +17,7 @@ package net.adoptopenjdk.bumblebench.string;
 import java.util.Locale;
 import java.util.Random;
 
+import net.adoptopenjdk.bumblebench.core.Blackhole;
 import net.adoptopenjdk.bumblebench.core.MiniBench;
 
 import java.io.File;
@@ -93,11 +94,12 @@ public final class StringConversionBench extends MiniBench {
 	}
 
 	private void doConversion() {
+		Blackhole blackhole = blackhole();
 		for (int i = 0; i < stringsToConvert.length; i++) {
 			if (IS_TESTING_TO_UPPER) {
-				stringsToConvert[i] = stringsToConvert[i].toUpperCase();
+				blackhole.consume(stringsToConvert[i].toUpperCase());
 			} else {
-				stringsToConvert[i] = stringsToConvert[i].toLowerCase();
+				blackhole.consume(stringsToConvert[i].toLowerCase());
 			}
 		}
 	}
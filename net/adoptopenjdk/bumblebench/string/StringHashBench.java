@@ -26,7 +26,6 @@ public final class StringHashBench extends MiniBench {
 	protected int maxIterationsPerLoop(){ return MAX_NUM_STRINGS; }
 
 	long _counter = 0x1234567890L; // Big so that the number of digits doesn't change much during the run
-	int  _escape; // To prevent the optimizer from removing the whole method
 
 	int doHashes(String[] strings) {
 		int total = 0;
@@ -57,7 +56,7 @@ public final class StringHashBench extends MiniBench {
 			startTimer();
 			int total = doHashes(strings);
 			pauseTimer();
-			_escape = total;
+			blackhole().consume(total);
 		}
 		return numLoops * strings.length;
 	}
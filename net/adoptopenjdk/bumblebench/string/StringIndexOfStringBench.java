@@ -39,7 +39,6 @@ public class StringIndexOfStringBench extends MicroBench {
 
 	static String[] strings = new String[MAX_NUM_STRINGS];
 	static int[] indices = new int[MAX_NUM_STRINGS];
-	static int[] resultIndices = new int[MAX_NUM_STRINGS];
 
 	static int currentIterationCount;
 	static int minIndex, maxIndex;
@@ -330,8 +329,6 @@ public class StringIndexOfStringBench extends MicroBench {
 		return MAX_NUM_STRINGS;
 	}
 
-	int _escape; // To prevent the optimizer from removing the whole method
-
 	int doIndexOfString() {
 		String srcString = wikipediaArticleString;
 
@@ -341,8 +338,7 @@ public class StringIndexOfStringBench extends MicroBench {
 
 		for (int i = 0; i < MAX_NUM_STRINGS; i++) {
 			String sub = strings[i];
-			_escape = srcString.indexOf(sub);
-			resultIndices[i] = _escape;
+			blackhole().consume(srcString.indexOf(sub));
 		}
 
 		return MAX_NUM_STRINGS;
@@ -352,9 +348,8 @@ public class StringIndexOfStringBench extends MicroBench {
 
 		for (long loop = 0; loop < numLoops; loop++) {
 			startTimer();
-			int total = doIndexOfString();
+			doIndexOfString();
 			pauseTimer();
-			_escape = total;
 		}
 		return numLoops * MAX_NUM_STRINGS;
 	}